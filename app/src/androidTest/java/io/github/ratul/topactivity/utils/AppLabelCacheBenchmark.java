@@ -0,0 +1,98 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Cached against uncached label lookups on a device, with the real package
+ * manager. Uses its own cache instance so the app's counters stay untouched.
+ *
+ * Run with ./gradlew connectedAndroidTest, results are logged under
+ * "AppLabelCacheBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppLabelCacheBenchmark {
+    private static final String TAG = "AppLabelCacheBenchmark";
+    private static final int ROUNDS = 7;
+    private static final int LOOKUPS = 200;
+
+    private final Context mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private final String[] mPackages = {mContext.getPackageName(), "android", "com.android.settings"};
+
+    @Test
+    public void cachedLookupIsMuchCheaperThanPackageManager() {
+        final LabelCache.Source source = new LabelCache.Source() {
+            @Override
+            public LabelCache.Entry load(String pkg) {
+                return AppLabelCache.PackageSource.load(mContext, pkg);
+            }
+
+            @Override
+            public long getLastUpdateTime(String pkg) {
+                return AppLabelCache.PackageSource.getLastUpdateTime(mContext, pkg);
+            }
+        };
+        final LabelCache cache = new LabelCache(16, source, null);
+
+        double uncached = measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOKUPS; i++)
+                    source.load(mPackages[i % mPackages.length]);
+            }
+        });
+        double cached = measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOKUPS; i++)
+                    cache.get(mPackages[i % mPackages.length]);
+            }
+        });
+
+        Log.i(TAG, String.format("uncached: %.0f ns/op, cached: %.0f ns/op, %s", uncached, cached,
+                cache.getStats()));
+        assertTrue("cached " + cached + " ns, uncached " + uncached + " ns", cached * 10 < uncached);
+    }
+
+    /**
+     * Median ns per lookup over the rounds, after one warmup round.
+     */
+    private static double measure(Runnable round) {
+        round.run();
+        double[] nsPerOp = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            round.run();
+            nsPerOp[i] = (SystemClock.elapsedRealtimeNanos() - start) / (double) LOOKUPS;
+        }
+        Arrays.sort(nsPerOp);
+        return nsPerOp[ROUNDS / 2];
+    }
+}
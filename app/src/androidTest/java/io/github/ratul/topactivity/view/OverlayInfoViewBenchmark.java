@@ -0,0 +1,232 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measure and layout passes of the overlay window per update, for
+ * OverlayInfoView against the three TextView rows window_tasks.xml had
+ * before it. The old rows are rebuilt in code with the same attributes.
+ *
+ * Run with ./gradlew connectedAndroidTest, results are logged under
+ * "OverlayInfoViewBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class OverlayInfoViewBenchmark {
+    private static final String TAG = "OverlayInfoViewBenchmark";
+    private static final int WIDTH_DP = 300;
+    private static final int ROUNDS = 50;
+
+    // label, package and class of consecutive foreground changes
+    private static final String[][] UPDATES = {
+            {"Pixel Launcher", "com.google.android.apps.nexuslauncher",
+                    "com.google.android.apps.nexuslauncher.NexusLauncherActivity"},
+            {"WhatsApp", "com.whatsapp", "com.whatsapp.HomeActivity"},
+            {"WhatsApp", "com.whatsapp", "com.whatsapp.Conversation"},
+            {"Settings", "com.android.settings", "com.android.settings.Settings$WifiSettingsActivity"},
+            {"YouTube", "com.google.android.youtube",
+                    "com.google.android.apps.youtube.app.watchwhile.WatchWhileActivity"},
+            {"Telegram", "org.telegram.messenger", "org.telegram.ui.LaunchActivity"},
+    };
+
+    private interface Overlay {
+        void update(String label, String pkg, String clas);
+    }
+
+    /**
+     * Root of the wrap_content overlay window, runs the passes ViewRootImpl
+     * would run for a frame and counts them.
+     */
+    private static class WindowRoot extends FrameLayout {
+        int measures;
+        int layouts;
+
+        WindowRoot(Context context) {
+            super(context);
+        }
+
+        void frame(int width) {
+            if (!isLayoutRequested())
+                return;
+            measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+            layout(0, 0, getMeasuredWidth(), getMeasuredHeight());
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measures++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            layouts++;
+            super.onLayout(changed, left, top, right, bottom);
+        }
+    }
+
+    private final Context mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    @Test
+    public void textChangeNeverRelaysOutTheWindow() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final OverlayInfoView info = new OverlayInfoView(mContext);
+                double[] current = measure("info_view", info, new Overlay() {
+                    @Override
+                    public void update(String label, String pkg, String clas) {
+                        info.setInfo(label, pkg, clas);
+                    }
+                });
+                double[] legacy = measureLegacy();
+
+                assertEquals(0, current[0], 0);
+                assertTrue("legacy measures per update " + legacy[0], legacy[0] >= 0.9);
+            }
+        });
+    }
+
+    /**
+     * Measures and ns per update, both averaged over all updates.
+     */
+    private double[] measure(String name, android.view.View content, Overlay overlay) {
+        WindowRoot root = new WindowRoot(mContext);
+        root.addView(content, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        int width = dp(WIDTH_DP);
+        overlay.update("", "", "");
+        root.frame(width);
+        root.measures = 0;
+        root.layouts = 0;
+
+        int updates = ROUNDS * UPDATES.length;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < updates; i++) {
+            String[] update = UPDATES[i % UPDATES.length];
+            overlay.update(update[0], update[1], update[2]);
+            root.frame(width);
+        }
+        double nsPerUpdate = (SystemClock.elapsedRealtimeNanos() - start) / (double) updates;
+        double measures = root.measures / (double) updates;
+        Log.i(TAG, String.format("%s: %.2f measures, %.2f layouts, %.0f ns per update", name, measures,
+                root.layouts / (double) updates, nsPerUpdate));
+        return new double[] {measures, nsPerUpdate};
+    }
+
+    private double[] measureLegacy() {
+        LinearLayout rows = new LinearLayout(mContext);
+        rows.setOrientation(LinearLayout.VERTICAL);
+
+        LinearLayout header = new LinearLayout(mContext);
+        final TextView appName = new BoldTextView(mContext);
+        appName.setSingleLine(true);
+        appName.setEllipsize(TextUtils.TruncateAt.END);
+        style(appName, 13);
+        appName.setPadding(dp(8), dp(8), 0, dp(8));
+        LinearLayout.LayoutParams params = wrap();
+        params.topMargin = dp(1);
+        header.addView(appName, params);
+        TextView title = new RegularTextView(mContext);
+        title.setText("-Activity Info");
+        title.setTextColor(Color.WHITE);
+        title.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+        title.setPadding(0, dp(8), dp(8), dp(8));
+        header.addView(title, wrap());
+        rows.addView(header);
+
+        final TextView packageName = addRow(rows, "Package name");
+        final TextView className = addRow(rows, "Class name");
+        return measure("legacy_rows", rows, new Overlay() {
+            @Override
+            public void update(String label, String pkg, String clas) {
+                setTextIfChanged(appName, label);
+                setTextIfChanged(packageName, pkg);
+                setTextIfChanged(className, clas);
+            }
+        });
+    }
+
+    private TextView addRow(LinearLayout rows, String label) {
+        LinearLayout row = new LinearLayout(mContext);
+        row.setBackgroundColor(0x60808080);
+
+        TextView labelView = new NormalTextView(mContext);
+        labelView.setText(label);
+        labelView.setGravity(Gravity.CENTER);
+        style(labelView, 13);
+        LinearLayout.LayoutParams labelParams = new LinearLayout.LayoutParams(dp(80),
+                ViewGroup.LayoutParams.MATCH_PARENT);
+        labelParams.rightMargin = dp(1);
+        labelParams.topMargin = dp(1);
+        row.addView(labelView, labelParams);
+
+        TextView value = new NormalTextView(mContext);
+        style(value, 12);
+        LinearLayout.LayoutParams valueParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT);
+        valueParams.topMargin = dp(1);
+        row.addView(value, valueParams);
+
+        rows.addView(row, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        return value;
+    }
+
+    private void style(TextView view, int textSizeSp) {
+        view.setBackgroundColor(0x60111111);
+        view.setTextColor(Color.WHITE);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_SP, textSizeSp);
+        view.setPadding(dp(8), dp(8), dp(8), dp(8));
+    }
+
+    private static LinearLayout.LayoutParams wrap() {
+        return new LinearLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT);
+    }
+
+    private static void setTextIfChanged(TextView view, String str) {
+        if (!TextUtils.equals(view.getText(), str))
+            view.setText(str);
+    }
+
+    private int dp(int value) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value,
+                mContext.getResources().getDisplayMetrics());
+    }
+}
@@ -26,6 +26,10 @@ import android.content.Intent;
 import io.github.ratul.topactivity.ui.CrashActivity;
 import android.widget.Toast;
 import android.os.Environment;
+import android.os.Trace;
+import io.github.ratul.topactivity.utils.DatabaseUtil;
+import io.github.ratul.topactivity.utils.StartupMetrics;
+import io.github.ratul.topactivity.utils.TypefaceRegistry;
 
 public class App extends Application {
 	private static App sApp;
@@ -39,7 +43,12 @@ public class App extends Application {
 
 	@Override
 	public void onCreate() {
+		Trace.beginSection("App.onCreate");
 		super.onCreate();
+		DatabaseUtil.preload();
+		TypefaceRegistry.preload(this);
+		StartupMetrics.onAppCreated();
+		Trace.endSection();
 	}
 
 	public static String getCrashLogDir() {
@@ -0,0 +1,180 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.os.Handler;
+import android.view.accessibility.AccessibilityEvent;
+
+/**
+ * Filters and debounces window state events before they reach the overlay.
+ *
+ * An event is dropped when it is not a window state change, comes from our own
+ * package or the input method, names a framework class, or names a class that
+ * is not an activity of its package (dialogs, toasts, popups). Events that
+ * pass are held for the debounce window; a burst within it collapses into its
+ * last event, and repeats of the last forwarded activity are dropped.
+ *
+ * Only used from the thread of the handler it is given.
+ */
+public class AccessibilityEventFilter {
+    public static final long DEFAULT_DEBOUNCE = 150;
+
+    private static final int DROP_TYPE = 0;
+    private static final int DROP_OWN_PACKAGE = 1;
+    private static final int DROP_IME = 2;
+    private static final int DROP_SYSTEM_CLASS = 3;
+    private static final int DROP_NOT_ACTIVITY = 4;
+    private static final int DROP_COLLAPSED = 5;
+    private static final int DROP_REPEAT = 6;
+    private static final String[] DROP_NAMES = {
+            "type", "own package", "ime", "system class", "not activity", "collapsed", "repeat"
+    };
+
+    public interface Listener {
+        void onForward(String pkg, String clas);
+    }
+
+    public interface ActivityChecker {
+        /**
+         * Returns whether the class is declared as an activity by the package.
+         * Called for every candidate event, so implementations should not do IPC
+         * once warm.
+         */
+        boolean isActivity(String pkg, String clas);
+    }
+
+    private final Handler mHandler;
+    private final Listener mListener;
+    private final ActivityChecker mChecker;
+    private final String mOwnPackage;
+    private final long[] mDropped = new long[DROP_NAMES.length];
+    private long mReceived;
+    private long mForwarded;
+
+    private long mDebounce = DEFAULT_DEBOUNCE;
+    private boolean mVerifyActivities = true;
+    private String mImePackage;
+
+    private String mPendingPkg, mPendingClass;
+    private String mLastPkg, mLastClass;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public AccessibilityEventFilter(Handler handler, String ownPackage, ActivityChecker checker,
+            Listener listener) {
+        mHandler = handler;
+        mOwnPackage = ownPackage;
+        mChecker = checker;
+        mListener = listener;
+    }
+
+    public void setDebounce(long millis) {
+        mDebounce = Math.max(0, millis);
+    }
+
+    public void setVerifyActivities(boolean verify) {
+        mVerifyActivities = verify;
+    }
+
+    /**
+     * Package of the current input method, its windows are ignored.
+     */
+    public void setImePackage(String pkg) {
+        mImePackage = pkg;
+    }
+
+    public void onEvent(int type, CharSequence packageName, CharSequence className) {
+        mReceived++;
+        if (type != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED || packageName == null || className == null) {
+            mDropped[DROP_TYPE]++;
+            return;
+        }
+        String pkg = packageName.toString();
+        String clas = className.toString();
+        if (pkg.equals(mOwnPackage)) {
+            mDropped[DROP_OWN_PACKAGE]++;
+            return;
+        }
+        if (pkg.equals(mImePackage)) {
+            mDropped[DROP_IME]++;
+            return;
+        }
+        if (SystemClassFilter.isSystemClass(clas)) {
+            mDropped[DROP_SYSTEM_CLASS]++;
+            return;
+        }
+        if (mVerifyActivities && !mChecker.isActivity(pkg, clas)) {
+            mDropped[DROP_NOT_ACTIVITY]++;
+            return;
+        }
+
+        if (mPendingPkg != null)
+            mDropped[DROP_COLLAPSED]++;
+        mPendingPkg = pkg;
+        mPendingClass = clas;
+        mHandler.removeCallbacks(mFlush);
+        if (mDebounce == 0)
+            flush();
+        else
+            mHandler.postDelayed(mFlush, mDebounce);
+    }
+
+    /**
+     * Drops a pending event and forgets the last forwarded one, e.g. when the
+     * overlay is hidden.
+     */
+    public void reset() {
+        mHandler.removeCallbacks(mFlush);
+        mPendingPkg = null;
+        mPendingClass = null;
+        mLastPkg = null;
+        mLastClass = null;
+    }
+
+    private void flush() {
+        String pkg = mPendingPkg;
+        String clas = mPendingClass;
+        mPendingPkg = null;
+        mPendingClass = null;
+        if (pkg == null)
+            return;
+        if (pkg.equals(mLastPkg) && clas.equals(mLastClass)) {
+            mDropped[DROP_REPEAT]++;
+            return;
+        }
+        mLastPkg = pkg;
+        mLastClass = clas;
+        mForwarded++;
+        mListener.onForward(pkg, clas);
+    }
+
+    public String getStats() {
+        long dropped = 0;
+        StringBuilder reasons = new StringBuilder();
+        for (int i = 0; i < mDropped.length; i++) {
+            dropped += mDropped[i];
+            reasons.append(", ").append(DROP_NAMES[i]).append(' ').append(mDropped[i]);
+        }
+        return "accessibility events: received " + mReceived + ", forwarded " + mForwarded + ", dropped "
+                + dropped + reasons;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.text.TextUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Append-only log of foreground transitions.
+ *
+ * Transitions are queued by the services and written in batches on a
+ * background thread. Each segment file starts with a header (magic, start
+ * time) followed by records:
+ * <pre>
+ * STRING: tag, varint byte length, UTF-8 bytes   (gets the next string id, from 1)
+ * EVENT:  tag, varint time delta, varint package id, varint class id, source byte
+ * </pre>
+ * Strings are interned per segment so every segment can be read on its own,
+ * id 0 stands for a missing value. Time deltas are relative to the previous
+ * event, or to the segment start time for the first one. An event with
+ * package id 0 is a stop record: from then on nothing is known to be in
+ * front, e.g. the screen went off or monitoring was turned off.
+ *
+ * A new process appends to the newest segment, after rebuilding its string
+ * table with the reader's index pass. Segments rotate by size and age and the
+ * oldest ones are deleted, which bounds disk usage.
+ */
+public class ActivityHistory {
+    public static final int SOURCE_USAGE_STATS = 0;
+    public static final int SOURCE_ACCESSIBILITY = 1;
+
+    static final int MAGIC = 0x54414831; // "TAH1"
+    static final int HEADER_SIZE = 12;
+    static final byte TAG_STRING = 1;
+    static final byte TAG_EVENT = 2;
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final long MAX_SEGMENT_SIZE = 256 * 1024;
+    private static final long MAX_SEGMENT_AGE = 24 * 60 * 60 * 1000L;
+    private static final int MAX_SEGMENTS = 32;
+    private static final int MAX_PENDING = 4096;
+    private static final long FLUSH_DELAY = 2000;
+
+    private static final Object sLock = new Object();
+    private static final ArrayDeque<Entry> sPending = new ArrayDeque<>();
+    private static final String[] sLastPkg = new String[2];
+    private static final String[] sLastClass = new String[2];
+    private static File sDir;
+    private static Handler sHandler;
+    private static boolean sFlushScheduled;
+    private static long sDropped;
+
+    // writer thread only
+    private static final ByteBuffer sBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private static final HashMap<String, Integer> sStrings = new HashMap<>();
+    private static FileChannel sChannel;
+    private static boolean sResumed;
+    private static long sSegmentSize;
+    private static long sSegmentStart;
+    private static long sLastTime;
+    private static boolean sStopped;
+
+    private static class Entry {
+        final long time;
+        final String pkg;
+        final String clas;
+        final int source;
+
+        Entry(long time, String pkg, String clas, int source) {
+            this.time = time;
+            this.pkg = pkg;
+            this.clas = clas;
+            this.source = source;
+        }
+    }
+
+    private static final Runnable sFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public static File getDirectory(Context context) {
+        return new File(context.getApplicationContext().getFilesDir(), "history");
+    }
+
+    /**
+     * Records a transition if it differs from the last one seen from the same
+     * source. Cheap and callable from any thread, the write happens later.
+     */
+    public static void record(Context context, String pkg, String clas, int source) {
+        long now = System.currentTimeMillis();
+        synchronized (sLock) {
+            if (sDir == null) {
+                sDir = getDirectory(context);
+                HandlerThread thread = new HandlerThread("ActivityHistory");
+                thread.start();
+                sHandler = new Handler(thread.getLooper());
+            }
+            if (TextUtils.equals(pkg, sLastPkg[source]) && TextUtils.equals(clas, sLastClass[source]))
+                return;
+            sLastPkg[source] = pkg;
+            sLastClass[source] = clas;
+            enqueue(new Entry(now, pkg, clas, source));
+        }
+    }
+
+    /**
+     * Records that nothing is known to be in front from now on, until the
+     * next transition is recorded. Called when the screen goes off and when
+     * monitoring stops.
+     */
+    public static void stop() {
+        long now = System.currentTimeMillis();
+        synchronized (sLock) {
+            if (sLastPkg[SOURCE_USAGE_STATS] == null && sLastPkg[SOURCE_ACCESSIBILITY] == null)
+                return;
+            for (int i = 0; i < sLastPkg.length; i++) {
+                sLastPkg[i] = null;
+                sLastClass[i] = null;
+            }
+            enqueue(new Entry(now, null, null, SOURCE_USAGE_STATS));
+        }
+    }
+
+    private static void enqueue(Entry entry) {
+        if (sPending.size() >= MAX_PENDING) {
+            sPending.pollFirst();
+            sDropped++;
+        }
+        sPending.addLast(entry);
+        if (!sFlushScheduled) {
+            sFlushScheduled = true;
+            sHandler.postDelayed(sFlush, FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Writes everything queued so far, then runs the callback on the writer thread.
+     */
+    public static void sync(Runnable then) {
+        Handler handler;
+        synchronized (sLock) {
+            handler = sHandler;
+        }
+        if (handler == null) {
+            then.run();
+            return;
+        }
+        handler.removeCallbacks(sFlush);
+        handler.post(sFlush);
+        handler.post(then);
+    }
+
+    public static long getDropped() {
+        synchronized (sLock) {
+            return sDropped;
+        }
+    }
+
+    private static void flush() {
+        Entry[] batch;
+        synchronized (sLock) {
+            sFlushScheduled = false;
+            batch = sPending.toArray(new Entry[0]);
+            sPending.clear();
+        }
+        try {
+            if (!sResumed)
+                resumeSegment();
+            for (Entry entry : batch) {
+                if (entry.pkg == null && sStopped)
+                    continue;
+                if (sChannel == null || sSegmentSize + sBuffer.position() >= MAX_SEGMENT_SIZE
+                        || entry.time - sSegmentStart >= MAX_SEGMENT_AGE)
+                    openSegment(entry.time);
+                putEvent(entry.time, entry.pkg, entry.clas, entry.source);
+            }
+            writeBuffer();
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeSegment();
+        }
+    }
+
+    private static void putEvent(long time, String pkg, String clas, int source) throws IOException {
+        int pkgId = intern(pkg);
+        int classId = intern(clas);
+        ensureRoom(32);
+        sBuffer.put(TAG_EVENT);
+        putVarLong(sBuffer, Math.max(0, time - sLastTime));
+        putVarLong(sBuffer, pkgId);
+        putVarLong(sBuffer, classId);
+        sBuffer.put((byte) source);
+        sLastTime = Math.max(sLastTime, time);
+        sStopped = pkg == null;
+    }
+
+    /**
+     * Opens the newest segment for append, once per process. A previous
+     * process that died without a stop record left its last activity open,
+     * it is closed at the time it was recorded since nothing later is known.
+     */
+    private static void resumeSegment() throws IOException {
+        sResumed = true;
+        File[] segments = ActivityHistoryReader.listSegments(sDir);
+        if (segments.length == 0)
+            return;
+        File file = segments[segments.length - 1];
+        ActivityHistoryReader.Segment segment = ActivityHistoryReader.readSegment(file);
+        if (segment == null)
+            return;
+
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        // drops a record cut short by a killed writer
+        channel.truncate(segment.end);
+        channel.position(segment.end);
+        sChannel = channel;
+        sSegmentSize = segment.end;
+        sSegmentStart = segment.startTime;
+        sLastTime = segment.lastTime;
+        sStrings.clear();
+        for (int id = 1; id <= segment.stringCount; id++)
+            sStrings.put(segment.string(id), id);
+        sStopped = segment.lastPkgId == 0;
+        if (!sStopped)
+            putEvent(sLastTime, null, null, SOURCE_USAGE_STATS);
+    }
+
+    private static int intern(String str) throws IOException {
+        if (str == null)
+            return 0;
+        Integer id = sStrings.get(str);
+        if (id != null)
+            return id;
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        ensureRoom(bytes.length + 6);
+        sBuffer.put(TAG_STRING);
+        putVarLong(sBuffer, bytes.length);
+        sBuffer.put(bytes);
+        id = sStrings.size() + 1;
+        sStrings.put(str, id);
+        return id;
+    }
+
+    private static void openSegment(long startTime) throws IOException {
+        writeBuffer();
+        closeSegment();
+        File[] segments = ActivityHistoryReader.listSegments(sDir);
+        for (int i = 0; i <= segments.length - MAX_SEGMENTS; i++)
+            segments[i].delete();
+
+        sDir.mkdirs();
+        File file = new File(sDir, startTime + SEGMENT_SUFFIX);
+        while (file.exists())
+            file = new File(sDir, ++startTime + SEGMENT_SUFFIX);
+        sChannel = new FileOutputStream(file).getChannel();
+        sSegmentSize = 0;
+        sSegmentStart = startTime;
+        sStrings.clear();
+        sLastTime = startTime;
+        sBuffer.putInt(MAGIC);
+        sBuffer.putLong(startTime);
+    }
+
+    private static void closeSegment() {
+        if (sChannel != null) {
+            try {
+                sChannel.close();
+            } catch (IOException ignored) {
+            }
+            sChannel = null;
+        }
+        sBuffer.clear();
+    }
+
+    private static void ensureRoom(int bytes) throws IOException {
+        if (sBuffer.remaining() < bytes)
+            writeBuffer();
+        if (sBuffer.remaining() < bytes)
+            throw new IOException("Record too large: " + bytes);
+    }
+
+    private static void writeBuffer() throws IOException {
+        sBuffer.flip();
+        if (sChannel != null) {
+            while (sBuffer.hasRemaining())
+                sSegmentSize += sChannel.write(sBuffer);
+        }
+        sBuffer.clear();
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
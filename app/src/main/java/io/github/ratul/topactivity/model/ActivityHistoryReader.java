@@ -0,0 +1,386 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Queries over the segments written by {@link ActivityHistory}.
+ *
+ * Segments are memory-mapped and decoded on the fly, nothing but a small
+ * index is kept on the heap. The index (string positions plus a sparse time
+ * index every {@link #INDEX_STRIDE} events) is built with one pass over a
+ * segment the first time it is read and reused while the file size is unchanged.
+ * Plain Java only, so it can be used from a JVM as well.
+ */
+public class ActivityHistoryReader {
+    static final int INDEX_STRIDE = 64;
+
+    private final File mDir;
+    private final HashMap<String, Segment> mSegments = new HashMap<>();
+
+    public interface Visitor {
+        /**
+         * Called for every foreground interval in time order, clipped to the queried range.
+         */
+        void onInterval(long start, long end, String pkg, String clas, int source);
+    }
+
+    public ActivityHistoryReader(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * Streams the foreground intervals between from and to. An activity is
+     * assumed to stay in front until the next event. A stop record ends it
+     * without starting a new interval. After the last event it stays in front
+     * until to or now, whichever is earlier.
+     */
+    public void forEachInterval(long from, long to, Visitor visitor) throws IOException {
+        to = Math.min(to, System.currentTimeMillis());
+        File[] files = listSegments(mDir);
+        Cursor prev = null;
+        for (int i = 0; i < files.length; i++) {
+            long nextStart = i + 1 < files.length ? segmentStart(files[i + 1]) : Long.MAX_VALUE;
+            if (nextStart <= from)
+                continue;
+            if (segmentStart(files[i]) >= to)
+                break;
+
+            Segment segment = open(files[i]);
+            if (segment == null)
+                continue;
+            Cursor cursor = segment.seek(from);
+            while (cursor.next()) {
+                if (cursor.time >= to)
+                    break;
+                if (prev != null && cursor.time > Math.max(prev.time, from)) {
+                    visitor.onInterval(Math.max(prev.time, from), cursor.time,
+                            prev.pkg(), prev.clas(), prev.source);
+                }
+                // a stop record, nothing is in front until the next event
+                prev = cursor.pkgId == 0 ? null : cursor.copy(prev);
+            }
+        }
+        if (prev != null && to > Math.max(prev.time, from))
+            visitor.onInterval(Math.max(prev.time, from), to, prev.pkg(), prev.clas(), prev.source);
+    }
+
+    public Map<String, Long> timePerPackage(long from, long to) throws IOException {
+        final HashMap<String, Long> result = new HashMap<>();
+        forEachInterval(from, to, new Visitor() {
+            @Override
+            public void onInterval(long start, long end, String pkg, String clas, int source) {
+                add(result, String.valueOf(pkg), end - start);
+            }
+        });
+        return result;
+    }
+
+    public Map<String, Long> timePerActivity(long from, long to) throws IOException {
+        final HashMap<String, Long> result = new HashMap<>();
+        forEachInterval(from, to, new Visitor() {
+            @Override
+            public void onInterval(long start, long end, String pkg, String clas, int source) {
+                add(result, pkg + "/" + clas, end - start);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Counts transitions keyed as "fromPackage/fromClass -> toPackage/toClass".
+     * Intervals separated by a stop record are not a transition.
+     */
+    public Map<String, Long> transitionCounts(long from, long to) throws IOException {
+        final HashMap<String, Long> result = new HashMap<>();
+        forEachInterval(from, to, new Visitor() {
+            private String mLast;
+            private long mLastEnd;
+
+            @Override
+            public void onInterval(long start, long end, String pkg, String clas, int source) {
+                String current = pkg + "/" + clas;
+                if (mLast != null && mLastEnd == start && !mLast.equals(current))
+                    add(result, mLast + " -> " + current, 1);
+                mLast = current;
+                mLastEnd = end;
+            }
+        });
+        return result;
+    }
+
+    private static void add(Map<String, Long> map, String key, long value) {
+        Long old = map.get(key);
+        map.put(key, old == null ? value : old + value);
+    }
+
+    /**
+     * Returns null for files that are empty or not segments, e.g. one whose
+     * header has not been written yet.
+     */
+    private Segment open(File file) throws IOException {
+        Segment segment = mSegments.get(file.getName());
+        if (segment == null || segment.length != file.length()) {
+            segment = readSegment(file);
+            if (segment == null)
+                return null;
+            mSegments.put(file.getName(), segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Maps and indexes a segment, or returns null if it is not one.
+     */
+    static Segment readSegment(File file) throws IOException {
+        if (file.length() < ActivityHistory.HEADER_SIZE)
+            return null;
+        Segment segment = new Segment(file);
+        return segment.buffer.getInt(0) == ActivityHistory.MAGIC ? segment : null;
+    }
+
+    /**
+     * Segment files sorted oldest first.
+     */
+    public static File[] listSegments(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return new File[0];
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(ActivityHistory.SEGMENT_SUFFIX))
+                files[count++] = file;
+        }
+        files = Arrays.copyOf(files, count);
+        Arrays.sort(files, (a, b) -> Long.compare(segmentStart(a), segmentStart(b)));
+        return files;
+    }
+
+    static long segmentStart(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - ActivityHistory.SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static class Segment {
+        final long length;
+        final MappedByteBuffer buffer;
+        final long startTime;
+        // end of the last complete record, time and package id of the last event
+        int end;
+        long lastTime;
+        int lastPkgId;
+        int[] stringPos = new int[16];
+        int[] stringLen = new int[16];
+        String[] strings = new String[16];
+        int stringCount;
+        // sparse index: time before the event and position of the event record
+        long[] indexPrevTime = new long[8];
+        int[] indexPos = new int[8];
+        int indexCount;
+
+        Segment(File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                length = raf.length();
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+            startTime = buffer.getLong(4);
+            if (buffer.getInt(0) == ActivityHistory.MAGIC)
+                buildIndex();
+        }
+
+        private void buildIndex() {
+            ByteBuffer in = buffer.duplicate();
+            in.position(ActivityHistory.HEADER_SIZE);
+            end = in.position();
+            lastTime = startTime;
+            int events = 0;
+            while (in.hasRemaining()) {
+                int pos = in.position();
+                byte tag = in.get();
+                try {
+                    if (tag == ActivityHistory.TAG_STRING) {
+                        int len = (int) getVarLong(in);
+                        if (len > in.remaining())
+                            break;
+                        in.position(in.position() + len);
+                        addString(in.position() - len, len);
+                    } else if (tag == ActivityHistory.TAG_EVENT) {
+                        long time = lastTime + getVarLong(in);
+                        int pkgId = (int) getVarLong(in);
+                        getVarLong(in);
+                        in.get();
+                        if (events++ % INDEX_STRIDE == 0)
+                            addIndex(lastTime, pos);
+                        lastTime = time;
+                        lastPkgId = pkgId;
+                    } else {
+                        break;
+                    }
+                } catch (RuntimeException e) {
+                    // truncated tail from a killed writer
+                    break;
+                }
+                end = in.position();
+            }
+        }
+
+        private void addString(int pos, int len) {
+            if (stringCount == stringPos.length) {
+                stringPos = Arrays.copyOf(stringPos, stringCount * 2);
+                stringLen = Arrays.copyOf(stringLen, stringCount * 2);
+                strings = Arrays.copyOf(strings, stringCount * 2);
+            }
+            stringPos[stringCount] = pos;
+            stringLen[stringCount] = len;
+            stringCount++;
+        }
+
+        private void addIndex(long prevTime, int pos) {
+            if (indexCount == indexPos.length) {
+                indexPrevTime = Arrays.copyOf(indexPrevTime, indexCount * 2);
+                indexPos = Arrays.copyOf(indexPos, indexCount * 2);
+            }
+            indexPrevTime[indexCount] = prevTime;
+            indexPos[indexCount] = pos;
+            indexCount++;
+        }
+
+        String string(int id) {
+            if (id <= 0 || id > stringCount)
+                return null;
+            int i = id - 1;
+            if (strings[i] == null) {
+                byte[] bytes = new byte[stringLen[i]];
+                ByteBuffer in = buffer.duplicate();
+                in.position(stringPos[i]);
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return strings[i];
+        }
+
+        /**
+         * Positions a cursor so that the first events it returns are at or before the time.
+         */
+        Cursor seek(long time) {
+            int lo = 0, hi = indexCount - 1, found = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (indexPrevTime[mid] <= time) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            // step back one block so the event in front at that time is included
+            found = Math.max(0, found - 1);
+            Cursor cursor = new Cursor(this);
+            if (indexCount > 0) {
+                cursor.in.position(indexPos[found]);
+                cursor.time = indexPrevTime[found];
+            }
+            return cursor;
+        }
+    }
+
+    private static class Cursor {
+        Segment segment;
+        final ByteBuffer in;
+        long time;
+        int pkgId, classId, source;
+
+        Cursor(Segment segment) {
+            this.segment = segment;
+            in = segment.buffer.duplicate();
+            in.position(segment.buffer.limit());
+            time = segment.startTime;
+        }
+
+        private Cursor() {
+            in = null;
+        }
+
+        boolean next() {
+            try {
+                while (in.hasRemaining()) {
+                    byte tag = in.get();
+                    if (tag == ActivityHistory.TAG_STRING) {
+                        int len = (int) getVarLong(in);
+                        in.position(in.position() + len);
+                    } else if (tag == ActivityHistory.TAG_EVENT) {
+                        time += getVarLong(in);
+                        pkgId = (int) getVarLong(in);
+                        classId = (int) getVarLong(in);
+                        source = in.get();
+                        return true;
+                    } else {
+                        return false;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // truncated tail
+            }
+            return false;
+        }
+
+        String pkg() {
+            return segment.string(pkgId);
+        }
+
+        String clas() {
+            return segment.string(classId);
+        }
+
+        Cursor copy(Cursor into) {
+            if (into == null)
+                into = new Cursor();
+            into.segment = segment;
+            into.time = time;
+            into.pkgId = pkgId;
+            into.classId = classId;
+            into.source = source;
+            return into;
+        }
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+/**
+ * Polls fast for a short while after the foreground changed, then backs off
+ * exponentially while it stays the same. Polling is suspended with the screen off.
+ */
+public class AdaptivePollPolicy implements PollPolicy {
+    private final long mFastDelay;
+    private final long mFastWindow;
+    private final long mMinDelay;
+    private final long mMaxDelay;
+
+    private long mLastChange = Long.MIN_VALUE / 2;
+    private long mDelay;
+    private boolean mScreenOn = true;
+
+    public AdaptivePollPolicy() {
+        this(250, 3000, 500, 5000);
+    }
+
+    public AdaptivePollPolicy(long fastDelay, long fastWindow, long minDelay, long maxDelay) {
+        mFastDelay = fastDelay;
+        mFastWindow = fastWindow;
+        mMinDelay = minDelay;
+        mMaxDelay = maxDelay;
+        mDelay = minDelay;
+    }
+
+    @Override
+    public synchronized long onPolled(long now, boolean changed) {
+        if (!mScreenOn)
+            return SUSPENDED;
+        if (changed) {
+            mLastChange = now;
+            mDelay = mMinDelay;
+            return mFastDelay;
+        }
+        if (now - mLastChange < mFastWindow)
+            return mFastDelay;
+
+        long delay = mDelay;
+        mDelay = Math.min(mDelay * 2, mMaxDelay);
+        return delay;
+    }
+
+    @Override
+    public synchronized long onWakeUp(long now) {
+        if (!mScreenOn)
+            return SUSPENDED;
+        mLastChange = now;
+        mDelay = mMinDelay;
+        return 0;
+    }
+
+    @Override
+    public synchronized void setScreenOn(boolean screenOn) {
+        mScreenOn = screenOn;
+        mDelay = mMinDelay;
+    }
+}
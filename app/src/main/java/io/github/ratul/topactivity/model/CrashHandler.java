@@ -18,6 +18,7 @@ package io.github.ratul.topactivity.model;
 
 import io.github.ratul.topactivity.App;
 import io.github.ratul.topactivity.ui.*;
+import io.github.ratul.topactivity.utils.DatabaseUtil;
 import android.app.*;
 import java.text.*;
 import java.io.*;
@@ -27,7 +28,6 @@ import android.os.*;
 import android.content.*;
 import java.util.*;
 import java.lang.Thread.UncaughtExceptionHandler;
-import android.widget.Toast;
 
 /**
  * Created by Ratul on 04/05/2022.
@@ -42,13 +42,21 @@ public class CrashHandler implements UncaughtExceptionHandler {
     }
 
     private App mApp;
-    private File crashDirectory;
+    private final CrashStore mStore;
     private String fullStackTrace, versionName;
     private long versionCode;
 
+    /**
+     * Only keeps the app and the store's buffer, the package manager and the
+     * storage are not touched until a crash actually happens, keeping this off
+     * the startup path.
+     */
     public CrashHandler(App app) {
         mApp = app;
-        crashDirectory = app.getExternalFilesDir(null);
+        mStore = new CrashStore(app);
+    }
+
+    private void resolveAppInfo() {
         try {
             PackageInfo packageInfo = mApp.getPackageManager().getPackageInfo(mApp.getPackageName(), 0);
             versionName = packageInfo.versionName;
@@ -61,36 +69,27 @@ public class CrashHandler implements UncaughtExceptionHandler {
 
     @Override
     public void uncaughtException(Thread main, Throwable mThrowable) {
-        if (tryUncaughtException(main, mThrowable) || DEFAULT == null) {
-            try {
-                Thread.sleep(1000L);
-            } catch (InterruptedException e) {
-                android.os.Process.sendSignal(android.os.Process.myPid(), android.os.Process.SIGNAL_KILL);
-            }
+        boolean handled = tryUncaughtException(main, mThrowable);
+        // settings changed within the commit delay are still only in memory
+        try {
+            DatabaseUtil.flush();
+        } catch (Throwable t) {
+            // the crash may have come from the settings themselves, the process must still end
+            t.printStackTrace();
+        }
+        // the log is on disk and the crash screen requested by now, nothing to wait for
+        if (handled || DEFAULT == null) {
             android.os.Process.killProcess(android.os.Process.myPid());
         } else {
             DEFAULT.uncaughtException(main, mThrowable);
         }
     }
 
-    private void showToast(String str, int length) {
-        Toast.makeText(mApp, str, length).show();
-    }
-
     private boolean tryUncaughtException(Thread thread, Throwable throwable) {
-        if (throwable == null) {
+        if (throwable == null)
             return false;
-        } else {
-            new Thread() {
-                @Override
-                public void run() {
-                    Looper.prepare();
-                    showToast("Saving Crash Log", 0);
-                    Looper.loop();
-                }
-            }.start();
-        }
-        File crashFile = new File(crashDirectory, "crash.txt");
+        resolveAppInfo();
+        String fingerprint = CrashStore.fingerprint(throwable);
         long timestamp = System.currentTimeMillis();
         SimpleDateFormat format = new SimpleDateFormat("dd-MM-yyyy HH:mm");
         String time = format.format(new Date(timestamp));
@@ -113,13 +112,15 @@ public class CrashHandler implements UncaughtExceptionHandler {
         sb.append("Android SDK : ").append(Build.VERSION.SDK_INT).append("\n");
         sb.append("App VersionName : ").append(versionName).append("\n");
         sb.append("App VersionCode : ").append(versionCode).append("\n");
+        sb.append("Fingerprint : ").append(fingerprint).append("\n");
         sb.append("\n*********************** Crash Log ***********************");
         sb.append("\n").append(fullStackTrace);
 
         String errorLog = sb.toString();
 
+        File crashFile = null;
         try {
-            writeFile(crashFile, errorLog);
+            crashFile = mStore.write(fingerprint, errorLog);
         } catch (IOException ignored) {
             ignored.printStackTrace();
         }
@@ -128,25 +129,11 @@ public class CrashHandler implements UncaughtExceptionHandler {
             Intent intent = new Intent(mApp, CrashActivity.class);
             intent.addFlags(
                 Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            intent.putExtra(CrashActivity.EXTRA_CRASH_INFO, errorLog);
+            if (crashFile != null)
+                intent.putExtra(CrashActivity.EXTRA_CRASH_FILE, crashFile.getName());
             mApp.startActivity(intent);
         }
 
         return errorLog != null;
     }
-
-    private void writeFile(File file, String content) throws IOException {
-        File parentFile = file.getParentFile();
-        if (parentFile != null && !parentFile.exists()) {
-            parentFile.mkdirs();
-        }
-        file.createNewFile();
-        try {
-            FileWriter writer = new FileWriter(file);
-			writer.write(content);
-			writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
 }
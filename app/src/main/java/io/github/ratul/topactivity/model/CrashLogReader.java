@@ -0,0 +1,134 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Line access to a crash log without loading it as one string.
+ *
+ * The file is memory-mapped and scanned once for line starts; a line is
+ * decoded only when asked for, so a list can show any part of a large log.
+ * Plain Java only, so it can be used from a JVM as well.
+ */
+public class CrashLogReader {
+    private final File mFile;
+    private final ByteBuffer mBuffer;
+    private int[] mLineStart = new int[256];
+    private int mLineCount;
+
+    public static class Match {
+        public final File file;
+        public final int line;
+        public final String text;
+
+        Match(File file, int line, String text) {
+            this.file = file;
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Maps the file and indexes its lines, call off the main thread.
+     */
+    public CrashLogReader(File file) throws IOException {
+        mFile = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        int limit = mBuffer.limit();
+        if (limit > 0)
+            addLine(0);
+        for (int i = 0; i < limit; i++) {
+            if (mBuffer.get(i) == '\n' && i + 1 < limit)
+                addLine(i + 1);
+        }
+    }
+
+    private void addLine(int start) {
+        if (mLineCount == mLineStart.length)
+            mLineStart = Arrays.copyOf(mLineStart, mLineCount * 2);
+        mLineStart[mLineCount++] = start;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    public String getLine(int index) {
+        int start = mLineStart[index];
+        int end = index + 1 < mLineCount ? mLineStart[index + 1] : mBuffer.limit();
+        while (end > start && (mBuffer.get(end - 1) == '\n' || mBuffer.get(end - 1) == '\r'))
+            end--;
+        byte[] bytes = new byte[end - start];
+        ByteBuffer in = mBuffer.duplicate();
+        in.position(start);
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The whole log, e.g. for the clipboard.
+     */
+    public String getText() {
+        byte[] bytes = new byte[mBuffer.limit()];
+        ByteBuffer in = mBuffer.duplicate();
+        in.position(0);
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Case-insensitive search over the files, in the given order.
+     */
+    public static List<Match> search(File[] files, String query, int limit) {
+        List<Match> matches = new ArrayList<>();
+        String needle = query.toLowerCase(Locale.ROOT);
+        for (File file : files) {
+            CrashLogReader reader;
+            try {
+                reader = new CrashLogReader(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            for (int i = 0; i < reader.getLineCount(); i++) {
+                String line = reader.getLine(i);
+                if (line.toLowerCase(Locale.ROOT).contains(needle)) {
+                    matches.add(new Match(file, i, line));
+                    if (matches.size() >= limit)
+                        return matches;
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps the last {@link #MAX_FILES} distinct crashes, one file each.
+ *
+ * Files are named after a fingerprint of the stack trace, so a crash that
+ * happens again replaces its file and bumps the occurrence counter on its
+ * first line instead of pushing older crashes out. A log is encoded into a
+ * buffer allocated up front, written with one channel write to a temporary
+ * file, synced and renamed into place, so a file is either complete or absent.
+ *
+ * The crash.txt older versions kept next to the directory is moved into it
+ * the first time crashes are listed, so it shows up and rotates like the rest.
+ */
+public class CrashStore {
+    public static final int MAX_FILES = 10;
+
+    static final String PREFIX = "crash-";
+    static final String SUFFIX = ".txt";
+    static final String LEGACY_NAME = "crash.txt";
+    static final String LEGACY_FINGERPRINT = "legacy";
+    private static final String COUNT_PREFIX = "Occurrences : ";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_CAUSES = 8;
+
+    private static volatile boolean sMigrated;
+
+    private final Context mContext;
+    // resolved on the first write, storage is not touched at startup
+    private File mDirectory;
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder();
+
+    /**
+     * The context is kept as given, the crash handler creates the store in
+     * attachBaseContext, before getApplicationContext() is set.
+     */
+    public CrashStore(Context context) {
+        mContext = context;
+    }
+
+    CrashStore(File directory) {
+        mContext = null;
+        mDirectory = directory;
+    }
+
+    public static File getDirectory(Context context) {
+        return new File(context.getApplicationContext().getExternalFilesDir(null), "crashes");
+    }
+
+    /**
+     * Stored crash files, most recent first.
+     */
+    public static File[] list(Context context) {
+        File dir = getDirectory(context);
+        if (!sMigrated) {
+            migrateLegacy(dir);
+            sMigrated = true;
+        }
+        return list(dir);
+    }
+
+    static File[] list(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return new File[0];
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX))
+                files[count++] = file;
+        }
+        files = Arrays.copyOf(files, count);
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        return files;
+    }
+
+    /**
+     * The stored crash file with the given name, or null if there is none.
+     * Names that resolve to anything outside the directory are refused.
+     */
+    public static File find(Context context, String name) {
+        return find(getDirectory(context), name);
+    }
+
+    static File find(File dir, String name) {
+        if (name == null || !name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+            return null;
+        try {
+            File file = new File(dir, name).getCanonicalFile();
+            if (!dir.getCanonicalFile().equals(file.getParentFile()) || !file.isFile())
+                return null;
+            return file;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public static File latest(Context context) {
+        File[] files = list(context);
+        return files.length == 0 ? null : files[0];
+    }
+
+    /**
+     * Moves the legacy crash.txt from the parent of the directory into it.
+     * It stays in place if the move fails, the next process tries again.
+     */
+    static void migrateLegacy(File dir) {
+        File legacy = new File(dir.getParentFile(), LEGACY_NAME);
+        if (!legacy.isFile())
+            return;
+        dir.mkdirs();
+        legacy.renameTo(new File(dir, PREFIX + LEGACY_FINGERPRINT + SUFFIX));
+    }
+
+    /**
+     * Stable for the same code path across builds: exception types and the
+     * class and method of each frame, not line numbers or messages.
+     */
+    public static String fingerprint(Throwable throwable) {
+        long hash = 0xcbf29ce484222325L;
+        for (int depth = 0; throwable != null && depth < MAX_CAUSES; depth++) {
+            hash = fnv(hash, throwable.getClass().getName());
+            for (StackTraceElement frame : throwable.getStackTrace()) {
+                hash = fnv(hash, frame.getClassName());
+                hash = fnv(hash, frame.getMethodName());
+            }
+            throwable = throwable.getCause();
+        }
+        return Long.toHexString(hash);
+    }
+
+    private static long fnv(long hash, String str) {
+        for (int i = 0; i < str.length(); i++)
+            hash = (hash ^ str.charAt(i)) * 0x100000001b3L;
+        return hash;
+    }
+
+    /**
+     * Writes the log durably and returns its file. Logs larger than the
+     * buffer are truncated.
+     */
+    public synchronized File write(String fingerprint, String log) throws IOException {
+        if (mDirectory == null)
+            mDirectory = getDirectory(mContext);
+        File dir = mDirectory;
+        dir.mkdirs();
+        File file = new File(dir, PREFIX + fingerprint + SUFFIX);
+        int count = file.exists() ? readCount(file) + 1 : 1;
+
+        mBuffer.clear();
+        mEncoder.reset();
+        mEncoder.encode(CharBuffer.wrap(COUNT_PREFIX + count + "\n"), mBuffer, false);
+        mEncoder.encode(CharBuffer.wrap(log), mBuffer, true);
+        mEncoder.flush(mBuffer);
+        mBuffer.flip();
+
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            FileChannel channel = out.getChannel();
+            while (mBuffer.hasRemaining())
+                channel.write(mBuffer);
+            channel.force(true);
+        }
+        if (!tmp.renameTo(file))
+            throw new IOException("Could not rename " + tmp);
+        rotate();
+        return file;
+    }
+
+    /**
+     * How often the crash of this file happened, from its first line.
+     */
+    public static int readCount(File file) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (line != null && line.startsWith(COUNT_PREFIX))
+                return Integer.parseInt(line.substring(COUNT_PREFIX.length()).trim());
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return 1;
+    }
+
+    private void rotate() {
+        File[] files = list(mDirectory);
+        for (int i = MAX_FILES; i < files.length; i++)
+            files[i].delete();
+    }
+}
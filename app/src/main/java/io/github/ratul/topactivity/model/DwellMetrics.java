@@ -0,0 +1,264 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Dwell time per package and per activity, and time between activity
+ * transitions, kept in log-linear histograms (8 sub-buckets per power of two,
+ * so values are within 12.5% of the truth) from 1 ms up to about 24 days.
+ *
+ * All memory is allocated up front: fixed tables of package and activity
+ * slots, each with one overflow slot shared by keys that no longer fit.
+ * Recording only compares and counts, it never allocates. A visit still open
+ * when monitoring stops or the screen goes off is dropped, since its end is
+ * not known.
+ */
+public class DwellMetrics {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 30;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int MAX_PACKAGES = 64;
+    private static final int MAX_ACTIVITIES = 128;
+    private static final String OVERFLOW_NAME = "(other)";
+
+    private static final Table sPackages = new Table(MAX_PACKAGES);
+    private static final Table sActivities = new Table(MAX_ACTIVITIES);
+    private static final int[] sInterval = new int[BUCKETS];
+    private static long sIntervalTotal;
+
+    private static String sCurrentPkg;
+    private static String sCurrentClass;
+    private static long sPackageSince = -1;
+    private static long sActivitySince = -1;
+
+    /**
+     * Histograms keyed by package and optionally class, in open addressing
+     * slots with the overflow slot last.
+     */
+    private static class Table {
+        final int size;
+        final String[] pkgs;
+        final String[] classes;
+        final int[][] dwell;
+        final long[] total;
+
+        Table(int size) {
+            this.size = size;
+            pkgs = new String[size];
+            classes = new String[size];
+            dwell = new int[size + 1][BUCKETS];
+            total = new long[size + 1];
+        }
+
+        void add(String pkg, String clas, long value) {
+            int slot = slot(pkg, clas);
+            dwell[slot][bucket(value)]++;
+            total[slot]++;
+        }
+
+        int slot(String pkg, String clas) {
+            int hash = pkg.hashCode() * 31 + (clas == null ? 0 : clas.hashCode());
+            int start = (hash & 0x7FFFFFFF) % size;
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % size;
+                if (pkgs[index] == null) {
+                    pkgs[index] = pkg;
+                    classes[index] = clas;
+                    return index;
+                }
+                if (pkgs[index].equals(pkg) && Objects.equals(classes[index], clas))
+                    return index;
+            }
+            return size;
+        }
+
+        String name(int slot) {
+            return classes[slot] == null ? pkgs[slot] : pkgs[slot] + "/" + classes[slot];
+        }
+
+        void clear() {
+            Arrays.fill(pkgs, null);
+            Arrays.fill(classes, null);
+            for (int[] histogram : dwell)
+                Arrays.fill(histogram, 0);
+            Arrays.fill(total, 0);
+        }
+    }
+
+    /**
+     * Feeds a foreground observation. Repeats of the current activity are ignored.
+     *
+     * @param now monotonic time in milliseconds
+     */
+    public static synchronized void onForeground(String pkg, String clas, long now) {
+        if (pkg == null)
+            return;
+        boolean samePackage = pkg.equals(sCurrentPkg);
+        if (samePackage && Objects.equals(clas, sCurrentClass))
+            return;
+
+        if (sActivitySince >= 0) {
+            sInterval[bucket(now - sActivitySince)]++;
+            sIntervalTotal++;
+            sActivities.add(sCurrentPkg, sCurrentClass, now - sActivitySince);
+        }
+        sActivitySince = now;
+
+        if (!samePackage) {
+            if (sCurrentPkg != null && sPackageSince >= 0)
+                sPackages.add(sCurrentPkg, null, now - sPackageSince);
+            sPackageSince = now;
+        }
+        sCurrentPkg = pkg;
+        sCurrentClass = clas;
+    }
+
+    /**
+     * Ends the open visit without recording it, e.g. when the screen goes off
+     * or monitoring stops. The next observation starts a new visit.
+     */
+    public static synchronized void onStopped() {
+        sCurrentPkg = null;
+        sCurrentClass = null;
+        sPackageSince = -1;
+        sActivitySince = -1;
+    }
+
+    static synchronized void reset() {
+        onStopped();
+        sPackages.clear();
+        sActivities.clear();
+        Arrays.fill(sInterval, 0);
+        sIntervalTotal = 0;
+    }
+
+    static int bucket(long value) {
+        if (value < 0)
+            value = 0;
+        if (value > MAX_VALUE)
+            value = MAX_VALUE;
+        if (value < SUB_COUNT)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_COUNT;
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Midpoint of the values that fall into the bucket.
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_COUNT)
+            return index;
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        int sub = index % SUB_COUNT;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((long) (SUB_COUNT + sub) << (exponent - SUB_BITS)) + width / 2;
+    }
+
+    static long percentile(int[] histogram, long total, double fraction) {
+        if (total == 0)
+            return -1;
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank)
+                return bucketValue(i);
+        }
+        return bucketValue(BUCKETS - 1);
+    }
+
+    public static synchronized String getCurrentPackage() {
+        return sCurrentPkg;
+    }
+
+    /**
+     * Dwell percentiles of one package and its activities, e.g. for the overlay.
+     */
+    public static synchronized String describePackage(String pkg) {
+        if (pkg == null)
+            return "No data";
+        StringBuilder sb = new StringBuilder(pkg).append("\n");
+        boolean found = false;
+        for (int i = 0; i < MAX_PACKAGES; i++) {
+            if (pkg.equals(sPackages.pkgs[i])) {
+                sb.append(line("dwell", sPackages.dwell[i], sPackages.total[i])).append("\n");
+                found = true;
+            }
+        }
+        if (!found)
+            sb.append("no completed visit yet\n");
+        for (int i = 0; i < MAX_ACTIVITIES; i++) {
+            if (pkg.equals(sActivities.pkgs[i]) && sActivities.total[i] > 0)
+                sb.append(line(shortClassName(pkg, sActivities.classes[i]), sActivities.dwell[i],
+                        sActivities.total[i])).append("\n");
+        }
+        return sb.append(line("transition interval", sInterval, sIntervalTotal)).toString();
+    }
+
+    /**
+     * Full report over all packages and activities, for display and export.
+     */
+    public static synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(line("transition interval", sInterval, sIntervalTotal)).append("\n\n");
+        appendTable(sb, sPackages);
+        sb.append("\n");
+        appendTable(sb, sActivities);
+        return sb.toString();
+    }
+
+    private static void appendTable(StringBuilder sb, Table table) {
+        for (int i = 0; i < table.size; i++) {
+            if (table.pkgs[i] != null && table.total[i] > 0)
+                sb.append(line(table.name(i), table.dwell[i], table.total[i])).append("\n");
+        }
+        if (table.total[table.size] > 0)
+            sb.append(line(OVERFLOW_NAME, table.dwell[table.size], table.total[table.size])).append("\n");
+    }
+
+    private static String shortClassName(String pkg, String clas) {
+        if (clas == null)
+            return "(no class)";
+        return clas.startsWith(pkg + ".") ? clas.substring(pkg.length()) : clas;
+    }
+
+    private static String line(String name, int[] histogram, long total) {
+        return String.format(Locale.US, "%s: n=%d p50=%s p90=%s p99=%s", name, total,
+                format(percentile(histogram, total, 0.5)),
+                format(percentile(histogram, total, 0.9)),
+                format(percentile(histogram, total, 0.99)));
+    }
+
+    private static String format(long millis) {
+        if (millis < 0)
+            return "-";
+        if (millis < 1000)
+            return millis + "ms";
+        if (millis < 60000)
+            return String.format(Locale.US, "%.1fs", millis / 1000.0);
+        return String.format(Locale.US, "%.1fm", millis / 60000.0);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import java.util.Objects;
+
+/**
+ * Incremental foreground state machine fed from a usage event stream.
+ *
+ * Events are consumed exactly once: the tracker remembers the timestamp of the
+ * last applied event and how many events carried that timestamp, so a query
+ * that starts at {@link #getCursor()} can skip the ones it has already seen.
+ * Plain Java on purpose, event types mirror UsageEvents.Event.
+ */
+public class ForegroundTracker {
+    public static final int MOVE_TO_FOREGROUND = 1;
+    public static final int MOVE_TO_BACKGROUND = 2;
+
+    private String mPackage;
+    private String mClass;
+    private long mCursor = -1;
+    private int mSeenAtCursor;
+    private boolean mChanged;
+    private long mRunTimestamp = -1;
+    private int mRunIndex;
+
+    /**
+     * Starts a query that begins at {@link #getCursor()}, its events are then
+     * passed to {@link #offer} in stream order.
+     */
+    public void beginQuery() {
+        mRunTimestamp = -1;
+        mRunIndex = 0;
+    }
+
+    /**
+     * Applies the next event of the current query unless an earlier query
+     * already did.
+     */
+    public void offer(int type, String pkg, String cls, long timestamp) {
+        if (timestamp == mRunTimestamp) {
+            mRunIndex++;
+        } else {
+            mRunTimestamp = timestamp;
+            mRunIndex = 0;
+        }
+        if (!isConsumed(timestamp, mRunIndex))
+            onEvent(type, pkg, cls, timestamp);
+    }
+
+    /**
+     * Returns true when the event at this timestamp was already applied by a
+     * previous query and must be skipped.
+     */
+    public boolean isConsumed(long timestamp, int indexAtTimestamp) {
+        if (timestamp < mCursor)
+            return true;
+        return timestamp == mCursor && indexAtTimestamp < mSeenAtCursor;
+    }
+
+    /**
+     * Applies one event. Callers pass events in stream order and only those
+     * for which {@link #isConsumed} returned false.
+     */
+    public void onEvent(int type, String pkg, String cls, long timestamp) {
+        if (timestamp == mCursor) {
+            mSeenAtCursor++;
+        } else {
+            mCursor = timestamp;
+            mSeenAtCursor = 1;
+        }
+
+        if (type == MOVE_TO_FOREGROUND) {
+            if (!Objects.equals(pkg, mPackage) || !Objects.equals(cls, mClass)) {
+                mPackage = pkg;
+                mClass = cls;
+                mChanged = true;
+            }
+        } else if (type == MOVE_TO_BACKGROUND) {
+            if (pkg != null && pkg.equals(mPackage)) {
+                mPackage = null;
+                mClass = null;
+                mChanged = true;
+            }
+        }
+    }
+
+    /**
+     * Start of the next query window, or -1 if nothing was consumed yet.
+     */
+    public long getCursor() {
+        return mCursor;
+    }
+
+    public String getPackageName() {
+        return mPackage;
+    }
+
+    public String getClassName() {
+        return mClass;
+    }
+
+    /**
+     * Returns whether the foreground changed since the last call and clears the flag.
+     */
+    public boolean consumeChanged() {
+        boolean changed = mChanged;
+        mChanged = false;
+        return changed;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.accessibilityservice.AccessibilityService;
+import android.util.SparseIntArray;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Focused view id and top-level container ids (mostly fragment hosts) of the
+ * foreground window.
+ *
+ * A full pass walks the window breadth-first, only down to
+ * {@link #CONTAINER_DEPTH} and within {@link #MAX_NODES} nodes and
+ * {@link #MAX_NANOS}; whatever it cannot reach is left out and the result is
+ * marked truncated. Every node it sees is remembered by identity with its
+ * parent and depth, so a content change whose source lies deeper is dropped
+ * after at most one parent lookup, and a shallow one only walks the source's
+ * subtree again. The focused view comes from findFocus and focus events,
+ * never from a walk. Every node obtained is recycled before returning.
+ *
+ * Only used from the accessibility service's main thread.
+ */
+public class NodeInspector {
+    public static final int MAX_NODES = 200;
+    public static final long MAX_NANOS = 4_000_000L;
+    public static final int CONTAINER_DEPTH = 6;
+
+    private static final int MAX_CONTAINERS = 4;
+    private static final int MAX_KNOWN = 1024;
+    // how many nodes are visited between two clock reads
+    private static final int CHECK_EVERY = 8;
+
+    public interface Listener {
+        void onInspected(Result result);
+    }
+
+    /**
+     * Immutable result of the inspection of one window.
+     */
+    public static class Result {
+        public final String focusedId;
+        public final List<String> containerIds;
+        public final boolean truncated;
+
+        Result(String focusedId, List<String> containerIds, boolean truncated) {
+            this.focusedId = focusedId;
+            this.containerIds = containerIds;
+            this.truncated = truncated;
+        }
+
+        boolean sameAs(Result other) {
+            return other != null && truncated == other.truncated
+                    && (focusedId == null ? other.focusedId == null : focusedId.equals(other.focusedId))
+                    && containerIds.equals(other.containerIds);
+        }
+
+        /**
+         * Two lines for the overlay, ids without their package.
+         */
+        public String describe() {
+            StringBuilder sb = new StringBuilder("Focus: ");
+            sb.append(focusedId == null ? "none" : shortId(focusedId)).append("\nContainers: ");
+            if (containerIds.isEmpty())
+                sb.append("none");
+            for (int i = 0; i < containerIds.size(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(shortId(containerIds.get(i)));
+            }
+            if (truncated)
+                sb.append(" …");
+            return sb.toString();
+        }
+    }
+
+    private static class Container {
+        final int index;
+        final String id;
+
+        Container(int index, String id) {
+            this.index = index;
+            this.id = id;
+        }
+    }
+
+    private final AccessibilityService mService;
+    private final Listener mListener;
+
+    // nodes seen so far, by AccessibilityNodeInfo.hashCode(), which is derived
+    // from the source view and window, so it is the same for every copy
+    private final SparseIntArray mIndex = new SparseIntArray();
+    private final int[] mParent = new int[MAX_KNOWN];
+    private final int[] mDepth = new int[MAX_KNOWN];
+    private int mKnown;
+
+    private final AccessibilityNodeInfo[] mQueue = new AccessibilityNodeInfo[MAX_NODES];
+    private final int[] mQueueIndex = new int[MAX_NODES];
+    private final List<Container> mContainers = new ArrayList<>();
+    private String mFocusedId;
+    private boolean mTruncated;
+    private int mWindowId = -1;
+    private boolean mStale = true;
+    private Result mResult;
+
+    private long mFullPasses;
+    private long mSubtreePasses;
+    private long mSkipped;
+    private long mTruncatedPasses;
+    private long mNodes;
+    private long mMaxPassNanos;
+
+    public NodeInspector(AccessibilityService service, Listener listener) {
+        mService = service;
+        mListener = listener;
+    }
+
+    public Result getResult() {
+        return mResult;
+    }
+
+    public void onEvent(AccessibilityEvent event) {
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_VIEW_FOCUSED:
+                onFocused(event);
+                break;
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                onContentChanged(event);
+                break;
+        }
+    }
+
+    /**
+     * Inspects the active window from scratch, e.g. after the activity changed.
+     */
+    public void inspect() {
+        AccessibilityNodeInfo root = mService.getRootInActiveWindow();
+        if (root == null)
+            return;
+        mFullPasses++;
+        mStale = false;
+        mWindowId = root.getWindowId();
+        mIndex.clear();
+        mKnown = 0;
+        mContainers.clear();
+        mTruncated = false;
+
+        AccessibilityNodeInfo focus = root.findFocus(AccessibilityNodeInfo.FOCUS_INPUT);
+        mFocusedId = focus == null ? null : focus.getViewIdResourceName();
+        if (focus != null)
+            focus.recycle();
+
+        walk(root, remember(root.hashCode(), -1, 0));
+        publish();
+    }
+
+    private void onFocused(AccessibilityEvent event) {
+        AccessibilityNodeInfo source = event.getSource();
+        if (source == null)
+            return;
+        mFocusedId = source.getViewIdResourceName();
+        source.recycle();
+        publish();
+    }
+
+    private void onContentChanged(AccessibilityEvent event) {
+        if (mStale) {
+            inspect();
+            return;
+        }
+        int changes = event.getContentChangeTypes();
+        if (event.getWindowId() != mWindowId || (changes != AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED
+                && (changes & AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE) == 0)) {
+            // text and state changes cannot add or remove containers
+            mSkipped++;
+            return;
+        }
+        AccessibilityNodeInfo source = event.getSource();
+        if (source == null)
+            return;
+        int key = source.hashCode();
+        int index = mIndex.get(key, -1);
+        if (index < 0) {
+            // added since the last pass, it matters only below a known shallow node
+            AccessibilityNodeInfo parent = source.getParent();
+            int parentIndex = parent == null ? -1 : mIndex.get(parent.hashCode(), -1);
+            if (parent != null)
+                parent.recycle();
+            if (parentIndex >= 0 && mDepth[parentIndex] < CONTAINER_DEPTH)
+                index = remember(key, parentIndex, mDepth[parentIndex] + 1);
+        }
+        if (index < 0) {
+            source.recycle();
+            mSkipped++;
+            return;
+        }
+
+        mSubtreePasses++;
+        for (int i = mContainers.size() - 1; i >= 0; i--) {
+            if (isWithin(mContainers.get(i).index, index))
+                mContainers.remove(i);
+        }
+        walk(source, index);
+        publish();
+    }
+
+    /**
+     * Breadth-first walk from the node, which is recycled like every node
+     * it reaches. Stops at the node or time budget.
+     */
+    private void walk(AccessibilityNodeInfo start, int startIndex) {
+        long begin = System.nanoTime();
+        long deadline = begin + MAX_NANOS;
+        boolean truncated = false;
+        int head = 0, tail = 0;
+        mQueue[tail] = start;
+        mQueueIndex[tail++] = startIndex;
+
+        while (head < tail) {
+            AccessibilityNodeInfo node = mQueue[head];
+            int index = mQueueIndex[head];
+            mQueue[head++] = null;
+            if (!truncated && head % CHECK_EVERY == 0 && System.nanoTime() > deadline)
+                truncated = true;
+            if (!truncated) {
+                mNodes++;
+                int childCount = node.getChildCount();
+                String id = node.getViewIdResourceName();
+                if (id != null && childCount > 0 && !id.startsWith("android:"))
+                    addContainer(index, id);
+                int depth = mDepth[index];
+                for (int i = 0; depth < CONTAINER_DEPTH && i < childCount; i++) {
+                    if (tail == MAX_NODES) {
+                        truncated = true;
+                        break;
+                    }
+                    AccessibilityNodeInfo child = node.getChild(i);
+                    if (child == null)
+                        continue;
+                    int childIndex = remember(child.hashCode(), index, depth + 1);
+                    if (childIndex < 0) {
+                        child.recycle();
+                        truncated = true;
+                        break;
+                    }
+                    mQueue[tail] = child;
+                    mQueueIndex[tail++] = childIndex;
+                }
+            }
+            node.recycle();
+        }
+
+        if (truncated) {
+            mTruncated = true;
+            mTruncatedPasses++;
+            // the table is full, only a new full pass can fix that
+            if (mKnown == MAX_KNOWN)
+                mStale = true;
+        }
+        mMaxPassNanos = Math.max(mMaxPassNanos, System.nanoTime() - begin);
+    }
+
+    private int remember(int key, int parent, int depth) {
+        int index = mIndex.get(key, -1);
+        if (index < 0) {
+            if (mKnown == MAX_KNOWN)
+                return -1;
+            index = mKnown++;
+            mIndex.put(key, index);
+        }
+        mParent[index] = parent;
+        mDepth[index] = depth;
+        return index;
+    }
+
+    private boolean isWithin(int index, int ancestor) {
+        for (int i = index; i >= 0; i = mParent[i]) {
+            if (i == ancestor)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the shallowest containers, in walk order within a depth.
+     */
+    private void addContainer(int index, String id) {
+        int depth = mDepth[index];
+        int position = mContainers.size();
+        while (position > 0 && mDepth[mContainers.get(position - 1).index] > depth)
+            position--;
+        if (position == MAX_CONTAINERS)
+            return;
+        mContainers.add(position, new Container(index, id));
+        if (mContainers.size() > MAX_CONTAINERS)
+            mContainers.remove(MAX_CONTAINERS);
+    }
+
+    private void publish() {
+        List<String> ids = new ArrayList<>(mContainers.size());
+        for (Container container : mContainers)
+            ids.add(container.id);
+        Result result = new Result(mFocusedId, Collections.unmodifiableList(ids), mTruncated);
+        if (result.sameAs(mResult))
+            return;
+        mResult = result;
+        mListener.onInspected(result);
+    }
+
+    /**
+     * Forgets the window, the next event inspects it from scratch.
+     */
+    public void reset() {
+        mIndex.clear();
+        mKnown = 0;
+        mContainers.clear();
+        mFocusedId = null;
+        mTruncated = false;
+        mWindowId = -1;
+        mStale = true;
+        mResult = null;
+    }
+
+    public String getStats() {
+        return "view inspector: full " + mFullPasses + ", subtree " + mSubtreePasses + ", skipped " + mSkipped
+                + ", truncated " + mTruncatedPasses + ", nodes " + mNodes + ", slowest pass "
+                + mMaxPassNanos / 1000 + " us";
+    }
+
+    static String shortId(String id) {
+        int slash = id.indexOf(":id/");
+        return slash < 0 ? id : id.substring(slash + 4);
+    }
+}
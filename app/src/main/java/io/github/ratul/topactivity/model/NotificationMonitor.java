@@ -52,6 +52,7 @@ public class NotificationMonitor extends BroadcastReceiver {
         if (!DatabaseUtil.isNotificationToggleEnabled()) {
             return;
         }
+        NotificationPublisher.reset();
         notifManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 
         Intent intent = new Intent(context, MainActivity.class);
@@ -89,6 +90,8 @@ public class NotificationMonitor extends BroadcastReceiver {
                 getPendingIntent(context, ACTION_STOP)).setContentIntent(pIntent);
 
         notifManager.notify(NOTIFICATION_ID, builder.build());
+        if (!isPaused)
+            NotificationPublisher.republish();
     }
 
     public static PendingIntent getPendingIntent(Context context, int command) {
@@ -98,6 +101,7 @@ public class NotificationMonitor extends BroadcastReceiver {
     }
 
     public static void cancelNotification(Context context) {
+        NotificationPublisher.reset();
         if (notifManager != null)
             notifManager.cancel(NOTIFICATION_ID);
     }
@@ -109,8 +113,6 @@ public class NotificationMonitor extends BroadcastReceiver {
             WindowUtil.dismiss(context);
             DatabaseUtil.setIsShowWindow(false);
             cancelNotification(context);
-            context.sendBroadcast(new Intent(MainActivity.ACTION_STATE_CHANGED));
         }
-        context.sendBroadcast(new Intent(QuickSettingsTileService.ACTION_UPDATE_TITLE));
     }
 }
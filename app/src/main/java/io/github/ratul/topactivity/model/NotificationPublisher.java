@@ -0,0 +1,128 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+/**
+ * Posts content updates to the running notification at a limited rate.
+ *
+ * The system drops updates from apps that post too often, so updates closer
+ * together than the minimum interval are held back and only the latest one is
+ * posted once the interval has passed. Updates identical to what is already
+ * shown are skipped. The builder from {@link NotificationMonitor} is reused.
+ */
+public class NotificationPublisher {
+    private static long sMinInterval = 1000;
+
+    private static Handler sHandler;
+    private static boolean sScheduled;
+    private static String sPendingTitle, sPendingText;
+    private static String sPostedTitle, sPostedText;
+    private static long sLastPost = Long.MIN_VALUE / 2;
+    private static long sPosted, sSkipped;
+
+    private static final Runnable sFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public static synchronized void setMinInterval(long millis) {
+        sMinInterval = millis;
+    }
+
+    /**
+     * Queues new notification content, callable from any thread.
+     */
+    public static synchronized void publish(String title, String text) {
+        sPendingTitle = title;
+        sPendingText = text;
+        if (sScheduled)
+            return;
+        if (TextUtils.equals(title, sPostedTitle) && TextUtils.equals(text, sPostedText)) {
+            sSkipped++;
+            return;
+        }
+
+        if (sHandler == null) {
+            HandlerThread thread = new HandlerThread("NotificationPublisher");
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        sScheduled = true;
+        long delay = sLastPost + sMinInterval - SystemClock.uptimeMillis();
+        sHandler.postDelayed(sFlush, Math.max(0, delay));
+    }
+
+    /**
+     * Drops the pending post and forgets what was posted, called when the
+     * notification is rebuilt or cancelled. The last content is kept for
+     * {@link #republish}.
+     */
+    public static synchronized void reset() {
+        if (sHandler != null)
+            sHandler.removeCallbacks(sFlush);
+        sScheduled = false;
+        sPostedTitle = null;
+        sPostedText = null;
+    }
+
+    /**
+     * Queues the last content again. The overlay skips unchanged activities,
+     * so a rebuilt notification would otherwise stay on its default text
+     * until the next foreground change.
+     */
+    public static synchronized void republish() {
+        if (sPendingTitle != null)
+            publish(sPendingTitle, sPendingText);
+    }
+
+    public static synchronized String getStats() {
+        return "notification updates: posted " + sPosted + ", skipped " + sSkipped;
+    }
+
+    private static void flush() {
+        String title, text;
+        synchronized (NotificationPublisher.class) {
+            sScheduled = false;
+            title = sPendingTitle;
+            text = sPendingText;
+            if (TextUtils.equals(title, sPostedTitle) && TextUtils.equals(text, sPostedText)) {
+                sSkipped++;
+                return;
+            }
+            sPostedTitle = title;
+            sPostedText = text;
+            sLastPost = SystemClock.uptimeMillis();
+            sPosted++;
+        }
+
+        Notification.Builder builder = NotificationMonitor.builder;
+        NotificationManager manager = NotificationMonitor.notifManager;
+        if (builder == null || manager == null)
+            return;
+        builder.setContentTitle(title).setContentText(text);
+        manager.notify(NotificationMonitor.NOTIFICATION_ID, builder.build());
+    }
+}
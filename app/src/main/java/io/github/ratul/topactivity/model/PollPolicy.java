@@ -0,0 +1,39 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+/**
+ * Decides when the monitoring loop polls next. All times are passed in by the
+ * caller so a policy can be driven from a virtual clock.
+ */
+public interface PollPolicy {
+    long SUSPENDED = -1;
+
+    /**
+     * Called after every poll. Returns the delay until the next poll in
+     * milliseconds, or {@link #SUSPENDED} to stop polling until woken up.
+     */
+    long onPolled(long now, boolean changed);
+
+    /**
+     * Something outside the loop hinted that the foreground may have changed.
+     * Returns the delay for the rescheduled poll, or {@link #SUSPENDED}.
+     */
+    long onWakeUp(long now);
+
+    void setScreenOn(boolean screenOn);
+}
@@ -0,0 +1,121 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
+
+/**
+ * Which events the accessibility service asks the system for.
+ *
+ * The system only dispatches event types the service has asked for, so
+ * while idle the service asks for none and costs nothing per event. With the
+ * overlay showing it asks for window changes only, and the frequent focus
+ * and content events, view ids and a shorter timeout only while the view
+ * inspector needs them. Every switch is timed, and events and time are
+ * counted per mode, so the stats show what each mode costs.
+ *
+ * Only used from the accessibility service's main thread.
+ */
+public class ServiceEventPolicy {
+    public static final int MODE_IDLE = 0;
+    public static final int MODE_OVERLAY = 1;
+    public static final int MODE_INSPECTING = 2;
+
+    private static final String TAG = "ServiceEventPolicy";
+    private static final String[] MODE_NAMES = {"idle", "overlay", "inspecting"};
+    private static final int[] EVENT_TYPES = {
+            0,
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED | AccessibilityEvent.TYPE_WINDOWS_CHANGED,
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED | AccessibilityEvent.TYPE_WINDOWS_CHANGED
+                    | AccessibilityEvent.TYPE_VIEW_FOCUSED | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+    };
+    private static final int[] FLAGS = {
+            0,
+            AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS,
+            AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS | AccessibilityServiceInfo.FLAG_REPORT_VIEW_IDS
+    };
+    private static final long[] TIMEOUTS = {100, 100, 50};
+
+    private final AccessibilityService mService;
+    private final long[] mEvents = new long[MODE_NAMES.length];
+    private final long[] mMillis = new long[MODE_NAMES.length];
+    private int mMode = -1;
+    private long mSince;
+    private long mSwitches;
+    private long mLastSwitchNanos;
+    private long mMaxSwitchNanos;
+
+    public ServiceEventPolicy(AccessibilityService service) {
+        mService = service;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * Reconfigures the service for the mode, does nothing if it is current.
+     */
+    public void setMode(int mode) {
+        if (mode == mMode)
+            return;
+        AccessibilityServiceInfo info = mService.getServiceInfo();
+        if (info == null)
+            return;
+        info.eventTypes = EVENT_TYPES[mode];
+        info.flags = FLAGS[mode];
+        info.notificationTimeout = TIMEOUTS[mode];
+
+        long begin = SystemClock.elapsedRealtimeNanos();
+        mService.setServiceInfo(info);
+        long nanos = SystemClock.elapsedRealtimeNanos() - begin;
+
+        long now = SystemClock.elapsedRealtime();
+        if (mMode >= 0)
+            mMillis[mMode] += now - mSince;
+        Log.d(TAG, (mMode < 0 ? "start" : MODE_NAMES[mMode]) + " -> " + MODE_NAMES[mode] + " in "
+                + nanos / 1000 + " us");
+        mMode = mode;
+        mSince = now;
+        mSwitches++;
+        mLastSwitchNanos = nanos;
+        mMaxSwitchNanos = Math.max(mMaxSwitchNanos, nanos);
+    }
+
+    public void onEvent() {
+        if (mMode >= 0)
+            mEvents[mMode]++;
+    }
+
+    public String getStats() {
+        StringBuilder sb = new StringBuilder("service modes: ");
+        sb.append(mMode < 0 ? "unset" : MODE_NAMES[mMode]);
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < MODE_NAMES.length; i++) {
+            long millis = mMillis[i] + (i == mMode ? now - mSince : 0);
+            sb.append(", ").append(MODE_NAMES[i]).append(' ').append(millis / 1000).append(" s ")
+                    .append(mEvents[i]).append(" events");
+        }
+        sb.append(", switches ").append(mSwitches).append(", last switch ").append(mLastSwitchNanos / 1000)
+                .append(" us, slowest ").append(mMaxSwitchNanos / 1000).append(" us");
+        return sb.toString();
+    }
+}
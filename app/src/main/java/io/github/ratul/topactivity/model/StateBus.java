@@ -0,0 +1,166 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.github.ratul.topactivity.utils.DatabaseUtil;
+
+/**
+ * In-process observable app state, replacing the broadcasts the app used
+ * to send to itself.
+ *
+ * Window and tile state mirror {@link DatabaseUtil}, the accessibility
+ * binding and the current activity are set by the services. Subscribers are
+ * called either synchronously on the publishing thread or posted to the main thread.
+ */
+public class StateBus {
+    public static final int WINDOW_SHOWN = 1;
+    public static final int ACCESSIBILITY_BOUND = 2;
+    public static final int TILE_ADDED = 3;
+    public static final int CURRENT_ACTIVITY = 4;
+    public static final int SETTINGS = 5;
+    public static final int WINDOWS = 6;
+    public static final int VIEWS = 7;
+
+    public interface Subscriber {
+        void onStateChanged(int what);
+    }
+
+    private static class Registration {
+        final Subscriber subscriber;
+        final boolean onMain;
+
+        Registration(Subscriber subscriber, boolean onMain) {
+            this.subscriber = subscriber;
+            this.onMain = onMain;
+        }
+    }
+
+    private static final CopyOnWriteArrayList<Registration> sRegistrations = new CopyOnWriteArrayList<>();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static volatile boolean sAccessibilityBound;
+    private static volatile String sCurrentPkg, sCurrentClass;
+    private static volatile List<WindowSetTracker.Window> sWindows = Collections.emptyList();
+    private static volatile NodeInspector.Result sInspection;
+
+    static {
+        DatabaseUtil.addListener(new DatabaseUtil.OnChangeListener() {
+            @Override
+            public void onSettingChanged(String key) {
+                if (DatabaseUtil.KEY_SHOW_WINDOW.equals(key))
+                    publish(WINDOW_SHOWN);
+                else if (DatabaseUtil.KEY_QS_TILE_ADDED.equals(key))
+                    publish(TILE_ADDED);
+                else
+                    publish(SETTINGS);
+            }
+        });
+    }
+
+    /**
+     * @param onMain deliver on the main thread instead of the publishing thread
+     */
+    public static void subscribe(Subscriber subscriber, boolean onMain) {
+        sRegistrations.add(new Registration(subscriber, onMain));
+    }
+
+    public static void unsubscribe(Subscriber subscriber) {
+        for (Registration registration : sRegistrations) {
+            if (registration.subscriber == subscriber)
+                sRegistrations.remove(registration);
+        }
+    }
+
+    public static boolean isWindowShown() {
+        return DatabaseUtil.isShowWindow();
+    }
+
+    public static boolean isTileAdded() {
+        return DatabaseUtil.hasQSTileAdded();
+    }
+
+    public static boolean isAccessibilityBound() {
+        return sAccessibilityBound;
+    }
+
+    public static void setAccessibilityBound(boolean bound) {
+        if (sAccessibilityBound == bound)
+            return;
+        sAccessibilityBound = bound;
+        publish(ACCESSIBILITY_BOUND);
+    }
+
+    public static String getCurrentPackage() {
+        return sCurrentPkg;
+    }
+
+    public static String getCurrentClass() {
+        return sCurrentClass;
+    }
+
+    public static void setCurrentActivity(String pkg, String clas) {
+        sCurrentPkg = pkg;
+        sCurrentClass = clas;
+        publish(CURRENT_ACTIVITY);
+    }
+
+    /**
+     * Visible application windows, as last seen by the accessibility service.
+     */
+    public static List<WindowSetTracker.Window> getWindows() {
+        return sWindows;
+    }
+
+    public static void setWindows(List<WindowSetTracker.Window> windows) {
+        sWindows = windows;
+        publish(WINDOWS);
+    }
+
+    /**
+     * Views of the foreground window, null while nothing has been inspected.
+     */
+    public static NodeInspector.Result getInspection() {
+        return sInspection;
+    }
+
+    public static void setInspection(NodeInspector.Result result) {
+        sInspection = result;
+        publish(VIEWS);
+    }
+
+    private static void publish(final int what) {
+        boolean isMain = Looper.myLooper() == Looper.getMainLooper();
+        for (final Registration registration : sRegistrations) {
+            if (!registration.onMain || isMain) {
+                registration.subscriber.onStateChanged(what);
+            } else {
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        registration.subscriber.onStateChanged(what);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+/**
+ * Tells framework classes (widgets, dialogs, views) apart from app classes by
+ * package prefix. The longest matching prefix wins, so bundled libraries that
+ * live under a framework namespace can be excluded again.
+ *
+ * Replaces probing the system class loader, which threw a
+ * ClassNotFoundException for every app activity.
+ */
+public class SystemClassFilter {
+    private static final String[] SYSTEM_PREFIXES = {
+        "android.",
+        "com.android.internal.",
+        "dalvik.",
+        "java.",
+        "javax.",
+        "libcore.",
+        "sun.",
+        "org.apache.http.",
+        "org.json.",
+        "org.w3c.dom.",
+        "org.xml.sax.",
+        "org.xmlpull.v1.",
+    };
+
+    private static final String[] APP_PREFIXES = {
+        "androidx.",
+        "android.support.",
+    };
+
+    private static final byte NONE = 0;
+    private static final byte SYSTEM = 1;
+    private static final byte APP = 2;
+
+    private static final Node sRoot = new Node();
+
+    static {
+        for (String prefix : SYSTEM_PREFIXES)
+            insert(prefix, SYSTEM);
+        for (String prefix : APP_PREFIXES)
+            insert(prefix, APP);
+    }
+
+    private static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        byte verdict = NONE;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c)
+                    return children[i];
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node node = child(c);
+            if (node != null)
+                return node;
+            int n = keys.length;
+            char[] newKeys = new char[n + 1];
+            Node[] newChildren = new Node[n + 1];
+            System.arraycopy(keys, 0, newKeys, 0, n);
+            System.arraycopy(children, 0, newChildren, 0, n);
+            newKeys[n] = c;
+            newChildren[n] = node = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    private static void insert(String prefix, byte verdict) {
+        Node node = sRoot;
+        for (int i = 0; i < prefix.length(); i++)
+            node = node.addChild(prefix.charAt(i));
+        node.verdict = verdict;
+    }
+
+    /**
+     * Returns true if the class name belongs to the platform, in a single pass
+     * over the name and without allocating.
+     */
+    public static boolean isSystemClass(CharSequence className) {
+        if (className == null)
+            return false;
+        byte verdict = NONE;
+        Node node = sRoot;
+        for (int i = 0, length = className.length(); i < length && node != null; i++) {
+            node = node.child(className.charAt(i));
+            if (node != null && node.verdict != NONE)
+                verdict = node.verdict;
+        }
+        return verdict == SYSTEM;
+    }
+}
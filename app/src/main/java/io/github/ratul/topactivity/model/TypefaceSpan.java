@@ -16,26 +16,18 @@
  */
 package io.github.ratul.topactivity.model;
 
-import android.util.LruCache;
 import android.graphics.Typeface;
 import android.text.style.MetricAffectingSpan;
 import android.content.Context;
 import android.text.TextPaint;
 import android.graphics.Paint;
+import io.github.ratul.topactivity.utils.TypefaceRegistry;
 
 public class TypefaceSpan extends MetricAffectingSpan {
-    
-    private static LruCache<String, Typeface> sTypefaceCache = new LruCache<String, Typeface>(12);
-    
     private Typeface mTypeface;
 
     public TypefaceSpan(Context context, String typefaceName) {
-        mTypeface = sTypefaceCache.get(typefaceName);
-        if (mTypeface == null) {
-            mTypeface = Typeface.createFromAsset(context.getApplicationContext()
-                                                 .getAssets(), typefaceName);
-            sTypefaceCache.put(typefaceName, mTypeface);
-        }
+        mTypeface = TypefaceRegistry.get(context, typefaceName);
     }
 
     @Override
@@ -0,0 +1,257 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import android.accessibilityservice.AccessibilityService;
+import android.graphics.Rect;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.view.Display;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityWindowInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every visible application window, with its bounds and display, for
+ * split-screen, freeform and picture-in-picture.
+ *
+ * The window list is only queried again on TYPE_WINDOWS_CHANGED. Window state
+ * events just name the activity of the window they come from, and only count
+ * if they pass the same system class and activity checks as the event filter,
+ * so a dialog or popup does not replace the activity of its window. Entries are
+ * kept by window id and updated in place, and the listener only hears about
+ * snapshots that differ from the previous one. Window and node infos are
+ * recycled as soon as they have been read.
+ *
+ * Only used from the accessibility service's main thread.
+ */
+public class WindowSetTracker {
+    public interface Listener {
+        void onWindowsChanged(List<Window> windows);
+    }
+
+    /**
+     * Immutable view of one application window.
+     */
+    public static class Window {
+        public final int id;
+        public final int displayId;
+        public final Rect bounds;
+        public final String pkg;
+        public final String clas;
+        public final boolean focused;
+        public final boolean pip;
+
+        Window(Entry entry) {
+            id = entry.id;
+            displayId = entry.displayId;
+            bounds = new Rect(entry.bounds);
+            pkg = entry.pkg;
+            clas = entry.clas;
+            focused = entry.focused;
+            pip = entry.pip;
+        }
+
+        @Override
+        public String toString() {
+            return pkg + "/" + (clas == null ? "?" : clas) + " " + bounds.toShortString()
+                    + (displayId != Display.DEFAULT_DISPLAY ? " display " + displayId : "")
+                    + (focused ? " focused" : "") + (pip ? " pip" : "");
+        }
+    }
+
+    private static class Entry {
+        int id;
+        int displayId;
+        final Rect bounds = new Rect();
+        String pkg;
+        String clas;
+        boolean focused;
+        boolean pip;
+        boolean seen;
+    }
+
+    private final AccessibilityService mService;
+    private final AccessibilityEventFilter.ActivityChecker mChecker;
+    private final Listener mListener;
+    private final SparseArray<Entry> mEntries = new SparseArray<>();
+    // activity class per window id, from window state events
+    private final SparseArray<String> mClasses = new SparseArray<>();
+    private final Rect mRect = new Rect();
+    private List<Window> mSnapshot = Collections.emptyList();
+    private boolean mStale = true;
+    private long mRefreshes;
+    private long mPublished;
+
+    public WindowSetTracker(AccessibilityService service, AccessibilityEventFilter.ActivityChecker checker,
+            Listener listener) {
+        mService = service;
+        mChecker = checker;
+        mListener = listener;
+    }
+
+    public void onEvent(AccessibilityEvent event) {
+        int type = event.getEventType();
+        if (type == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED && event.getPackageName() != null
+                && event.getClassName() != null)
+            onWindowState(event);
+        if (mStale || type == AccessibilityEvent.TYPE_WINDOWS_CHANGED)
+            refresh();
+    }
+
+    private void onWindowState(AccessibilityEvent event) {
+        int windowId = event.getWindowId();
+        String pkg = event.getPackageName().toString();
+        String clas = event.getClassName().toString();
+        if (clas.equals(mClasses.get(windowId)))
+            return;
+        if (SystemClassFilter.isSystemClass(clas) || !mChecker.isActivity(pkg, clas))
+            return;
+        mClasses.put(windowId, clas);
+        Entry entry = mEntries.get(windowId);
+        if (!mStale && entry != null && pkg.equals(entry.pkg)) {
+            entry.clas = clas;
+            publish();
+        }
+    }
+
+    public List<Window> getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Re-reads the window list and diffs it against the current entries.
+     */
+    public void refresh() {
+        mRefreshes++;
+        mStale = false;
+        for (int i = 0; i < mEntries.size(); i++)
+            mEntries.valueAt(i).seen = false;
+
+        boolean changed = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            SparseArray<List<AccessibilityWindowInfo>> displays = mService.getWindowsOnAllDisplays();
+            for (int i = 0; i < displays.size(); i++)
+                changed |= read(displays.keyAt(i), displays.valueAt(i));
+        } else {
+            changed = read(Display.DEFAULT_DISPLAY, mService.getWindows());
+        }
+
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            if (!mEntries.valueAt(i).seen) {
+                mClasses.remove(mEntries.keyAt(i));
+                mEntries.removeAt(i);
+                changed = true;
+            }
+        }
+        if (changed)
+            publish();
+    }
+
+    private boolean read(int displayId, List<AccessibilityWindowInfo> windows) {
+        boolean changed = false;
+        for (AccessibilityWindowInfo window : windows) {
+            if (window.getType() == AccessibilityWindowInfo.TYPE_APPLICATION)
+                changed |= update(displayId, window);
+            window.recycle();
+        }
+        return changed;
+    }
+
+    private boolean update(int displayId, AccessibilityWindowInfo window) {
+        int id = window.getId();
+        Entry entry = mEntries.get(id);
+        boolean changed = false;
+        if (entry == null) {
+            entry = new Entry();
+            entry.id = id;
+            mEntries.put(id, entry);
+            changed = true;
+        }
+        entry.seen = true;
+
+        window.getBoundsInScreen(mRect);
+        boolean focused = window.isFocused();
+        boolean pip = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && window.isInPictureInPictureMode();
+        if (entry.pkg == null) {
+            // a window keeps its package, so the root node is only read once
+            AccessibilityNodeInfo root = window.getRoot();
+            if (root != null) {
+                entry.pkg = root.getPackageName() == null ? null : root.getPackageName().toString();
+                root.recycle();
+            }
+            changed |= entry.pkg != null;
+        }
+        String clas = mClasses.get(id);
+        if (entry.displayId != displayId || !entry.bounds.equals(mRect) || entry.focused != focused
+                || entry.pip != pip || !TextUtils.equals(entry.clas, clas)) {
+            entry.displayId = displayId;
+            entry.bounds.set(mRect);
+            entry.focused = focused;
+            entry.pip = pip;
+            entry.clas = clas;
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void publish() {
+        List<Window> snapshot = new ArrayList<>(mEntries.size());
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.valueAt(i).pkg != null)
+                snapshot.add(new Window(mEntries.valueAt(i)));
+        }
+        mSnapshot = Collections.unmodifiableList(snapshot);
+        mPublished++;
+        mListener.onWindowsChanged(mSnapshot);
+    }
+
+    /**
+     * Forgets all windows, the next event reads the window list again.
+     */
+    public void reset() {
+        mEntries.clear();
+        mClasses.clear();
+        mSnapshot = Collections.emptyList();
+        mStale = true;
+    }
+
+    public String getStats() {
+        return "window tracker: windows " + mSnapshot.size() + ", refreshes " + mRefreshes + ", published "
+                + mPublished;
+    }
+
+    /**
+     * One line per window, for display.
+     */
+    public static String describe(List<Window> windows) {
+        if (windows == null || windows.isEmpty())
+            return "No application window";
+        StringBuilder sb = new StringBuilder();
+        for (Window window : windows) {
+            if (sb.length() > 0)
+                sb.append('\n');
+            sb.append(window);
+        }
+        return sb.toString();
+    }
+}
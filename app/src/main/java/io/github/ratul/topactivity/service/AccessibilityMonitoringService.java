@@ -17,17 +17,25 @@
 package io.github.ratul.topactivity.service;
 
 import android.accessibilityservice.AccessibilityService;
-import android.annotation.SuppressLint;
+import android.content.ComponentName;
 import android.content.Intent;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.os.SystemClock;
 import android.view.accessibility.AccessibilityEvent;
-import android.widget.Toast;
+import io.github.ratul.topactivity.utils.ActivityIndex;
 import io.github.ratul.topactivity.utils.WindowUtil;
 import io.github.ratul.topactivity.utils.DatabaseUtil;
+import io.github.ratul.topactivity.model.AccessibilityEventFilter;
+import io.github.ratul.topactivity.model.ActivityHistory;
+import io.github.ratul.topactivity.model.DwellMetrics;
+import io.github.ratul.topactivity.model.NodeInspector;
 import io.github.ratul.topactivity.model.NotificationMonitor;
-import android.content.pm.PackageManager;
-import java.util.List;
-import android.content.pm.ResolveInfo;
-import android.content.Context;
+import io.github.ratul.topactivity.model.ServiceEventPolicy;
+import io.github.ratul.topactivity.model.StateBus;
+import io.github.ratul.topactivity.model.WindowSetTracker;
 
 /**
  * Created by Wen on 16/02/2017.
@@ -35,41 +43,110 @@ import android.content.Context;
  */
 public class AccessibilityMonitoringService extends AccessibilityService {
 	private static AccessibilityMonitoringService sInstance;
+	private AccessibilityEventFilter mFilter;
+	private WindowSetTracker mWindowTracker;
+	private NodeInspector mInspector;
+	private ServiceEventPolicy mPolicy;
+	private final StateBus.Subscriber mSettingsSubscriber = what -> {
+		if (what == StateBus.SETTINGS || what == StateBus.WINDOW_SHOWN)
+			updateMode();
+	};
+	private ContentObserver mImeObserver;
 
 	public static AccessibilityMonitoringService getInstance() {
 		return sInstance;
 	}
 
-	public boolean isPackageInstalled(String packageName) {
-		final PackageManager packageManager = getPackageManager();
-		Intent intent = packageManager.getLaunchIntentForPackage(packageName);
-		if (intent == null) {
-			return false;
-		}
-		List<ResolveInfo> list = packageManager.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
-		return list.size() > 0;
+	public static String getFilterStats() {
+		AccessibilityMonitoringService service = sInstance;
+		return service == null || service.mFilter == null ? "accessibility events: not bound"
+				: service.mPolicy.getStats() + "\n" + service.mFilter.getStats() + "\n"
+						+ service.mWindowTracker.getStats() + "\n" + service.mInspector.getStats();
 	}
 
-	public boolean isSystemClass(String className) {
-		try {
-			ClassLoader.getSystemClassLoader().loadClass(className);
-			return true;
-		} catch (ClassNotFoundException e) {
-			return false;
-		}
+	/**
+	 * Whether the class is declared as an activity of the package, dialogs
+	 * and other windows are not.
+	 */
+	public boolean isActivity(String pkg, String className) {
+		return ActivityIndex.isActivity(this, pkg, className);
+	}
+
+	private boolean isOverlayShown() {
+		return WindowUtil.viewAdded && DatabaseUtil.isShowWindow() && DatabaseUtil.hasAccess();
 	}
 
 	@Override
 	public void onAccessibilityEvent(AccessibilityEvent event) {
-		if (WindowUtil.viewAdded && DatabaseUtil.isShowWindow() && DatabaseUtil.hasAccess()) {
-			String act1 = String.valueOf(event.getClassName());
-			String act2 = String.valueOf(event.getPackageName());
+		if (mFilter == null)
+			return;
+		mPolicy.onEvent();
+		if (isOverlayShown()) {
+			mWindowTracker.onEvent(event);
+			if (mPolicy.getMode() == ServiceEventPolicy.MODE_INSPECTING)
+				mInspector.onEvent(event);
+			mFilter.onEvent(event.getEventType(), event.getPackageName(), event.getClassName());
+		} else {
+			resetTracking();
+		}
+	}
 
-			if (isSystemClass(act1))
-				return;
-			WindowUtil.show(this, act2, act1);
+	/**
+	 * Forgets windows and views, they are read again once the overlay is back.
+	 */
+	private void resetTracking() {
+		mFilter.reset();
+		boolean hadWindows = !mWindowTracker.getSnapshot().isEmpty();
+		mWindowTracker.reset();
+		if (hadWindows)
+			StateBus.setWindows(mWindowTracker.getSnapshot());
+		boolean hadViews = mInspector.getResult() != null;
+		mInspector.reset();
+		if (hadViews)
+			StateBus.setInspection(null);
+	}
+
+	/**
+	 * Asks for no events while the overlay is off, window changes while it
+	 * shows, and focus and content changes only while views are inspected.
+	 */
+	private void updateMode() {
+		int mode = !DatabaseUtil.isShowWindow() || !DatabaseUtil.hasAccess() ? ServiceEventPolicy.MODE_IDLE
+				: DatabaseUtil.isInspectViews() ? ServiceEventPolicy.MODE_INSPECTING
+						: ServiceEventPolicy.MODE_OVERLAY;
+		int previous = mPolicy.getMode();
+		if (mode == previous)
+			return;
+		mPolicy.setMode(mode);
+		if (mode == ServiceEventPolicy.MODE_IDLE) {
+			// no event will come to notice the overlay is gone
+			resetTracking();
+		} else if (mode == ServiceEventPolicy.MODE_INSPECTING || previous == ServiceEventPolicy.MODE_INSPECTING) {
+			boolean hadViews = mInspector.getResult() != null;
+			mInspector.reset();
+			if (hadViews)
+				StateBus.setInspection(null);
+			if (mode == ServiceEventPolicy.MODE_INSPECTING && isOverlayShown())
+				mInspector.inspect();
 		}
 	}
+
+	private void onForward(String pkg, String className) {
+		if (!isOverlayShown())
+			return;
+		MonitoringService.wakeUp();
+		ActivityHistory.record(this, pkg, className, ActivityHistory.SOURCE_ACCESSIBILITY);
+		DwellMetrics.onForeground(pkg, className, SystemClock.elapsedRealtime());
+		WindowUtil.show(this, pkg, className);
+		if (mPolicy.getMode() == ServiceEventPolicy.MODE_INSPECTING)
+			mInspector.inspect();
+	}
+
+	private void updateImePackage() {
+		String ime = Settings.Secure.getString(getContentResolver(), Settings.Secure.DEFAULT_INPUT_METHOD);
+		ComponentName component = ime == null ? null : ComponentName.unflattenFromString(ime);
+		mFilter.setImePackage(component == null ? null : component.getPackageName());
+	}
 	
 	@Override
 	public void onInterrupt() {
@@ -77,16 +154,40 @@ public class AccessibilityMonitoringService extends AccessibilityService {
 
 	@Override
 	protected void onServiceConnected() {
+		Handler handler = new Handler(Looper.getMainLooper());
+		mFilter = new AccessibilityEventFilter(handler, getPackageName(), this::isActivity, this::onForward);
+		mWindowTracker = new WindowSetTracker(this, this::isActivity, StateBus::setWindows);
+		mInspector = new NodeInspector(this, StateBus::setInspection);
+		mPolicy = new ServiceEventPolicy(this);
+		updateImePackage();
+		mImeObserver = new ContentObserver(handler) {
+			@Override
+			public void onChange(boolean selfChange) {
+				updateImePackage();
+			}
+		};
+		getContentResolver().registerContentObserver(
+				Settings.Secure.getUriFor(Settings.Secure.DEFAULT_INPUT_METHOD), false, mImeObserver);
 		sInstance = this;
 		super.onServiceConnected();
+		updateMode();
+		StateBus.subscribe(mSettingsSubscriber, true);
+		StateBus.setAccessibilityBound(true);
 	}
 
 	@Override
 	public boolean onUnbind(Intent intent) {
 		sInstance = null;
+		if (mImeObserver != null) {
+			getContentResolver().unregisterContentObserver(mImeObserver);
+			mImeObserver = null;
+		}
+		StateBus.unsubscribe(mSettingsSubscriber);
+		if (mFilter != null)
+			resetTracking();
 		WindowUtil.dismiss(this);
 		NotificationMonitor.cancelNotification(this);
-		sendBroadcast(new Intent(QuickSettingsTileService.ACTION_UPDATE_TITLE));
+		StateBus.setAccessibilityBound(false);
 		return super.onUnbind(intent);
 	}
 }
@@ -22,13 +22,19 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.app.usage.UsageEvents;
 import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Build;
-import android.os.Handler;
 import android.os.IBinder;
 import android.os.SystemClock;
+import android.text.TextUtils;
 
+import io.github.ratul.topactivity.model.ActivityHistory;
+import io.github.ratul.topactivity.model.AdaptivePollPolicy;
+import io.github.ratul.topactivity.model.DwellMetrics;
+import io.github.ratul.topactivity.model.ForegroundTracker;
 import io.github.ratul.topactivity.utils.DatabaseUtil;
 import io.github.ratul.topactivity.utils.WindowUtil;
 
@@ -37,13 +43,43 @@ import io.github.ratul.topactivity.utils.WindowUtil;
  * Refactored by Ratul on 04/05/2022.
  */
 public class MonitoringService extends Service {
+    private static final long FIRST_RUN_WINDOW = 600000;
     public boolean serviceAlive = false;
-    private boolean firstRun = true;
     public static MonitoringService INSTANCE;
     private UsageStatsManager usageStats;
-    public Handler mHandler = new Handler();
-    private String text;
-    private String text1;
+    private final ForegroundTracker mTracker = new ForegroundTracker();
+    private final UsageEvents.Event mEvent = new UsageEvents.Event();
+    private PollScheduler mScheduler;
+    private BroadcastReceiver mScreenReceiver;
+    private final DatabaseUtil.OnChangeListener mSettingsListener = new DatabaseUtil.OnChangeListener() {
+        @Override
+        public void onSettingChanged(String key) {
+            if (DatabaseUtil.KEY_SHOW_WINDOW.equals(key) && !DatabaseUtil.isShowWindow())
+                mScheduler.wakeUp();
+        }
+    };
+    // written on the poll thread, read by the screen receiver on the main thread
+    private volatile Foreground mForeground;
+
+    /**
+     * Package and class of the activity in front, published as one object so
+     * a reader never pairs the package of one poll with the class of another.
+     */
+    private static final class Foreground {
+        final String pkg;
+        final String clas;
+
+        Foreground(String pkg, String clas) {
+            this.pkg = pkg;
+            this.clas = clas;
+        }
+    }
+
+    public static void wakeUp() {
+        MonitoringService service = INSTANCE;
+        if (service != null && service.mScheduler != null)
+            service.mScheduler.wakeUp();
+    }
 
     @Override
     public void onCreate() {
@@ -51,32 +87,72 @@ public class MonitoringService extends Service {
         INSTANCE = this;
         serviceAlive = true;
         usageStats = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
+        mScheduler = new PollScheduler(new AdaptivePollPolicy(), new PollScheduler.Poller() {
+            @Override
+            public Boolean poll() {
+                return pollOnce();
+            }
+        });
+
+        mScreenReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                boolean screenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+                if (screenOn) {
+                    // the activity in front is unchanged, start a new visit of it
+                    Foreground foreground = mForeground;
+                    if (foreground != null) {
+                        ActivityHistory.record(MonitoringService.this, foreground.pkg, foreground.clas,
+                                ActivityHistory.SOURCE_USAGE_STATS);
+                        DwellMetrics.onForeground(foreground.pkg, foreground.clas, SystemClock.elapsedRealtime());
+                    }
+                } else {
+                    ActivityHistory.stop();
+                    DwellMetrics.onStopped();
+                }
+                mScheduler.setScreenOn(screenOn);
+            }
+        };
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(mScreenReceiver, filter);
+        DatabaseUtil.addListener(mSettingsListener);
     }
 
     @Override
     public void onDestroy() {
         serviceAlive = false;
+        mScheduler.stop();
+        ActivityHistory.stop();
+        DwellMetrics.onStopped();
+        DatabaseUtil.removeListener(mSettingsListener);
+        unregisterReceiver(mScreenReceiver);
+        if (INSTANCE == this)
+            INSTANCE = null;
         super.onDestroy();
     }
 
     public void getActivityInfo() {
         long currentTimeMillis = System.currentTimeMillis();
-        UsageEvents queryEvents = usageStats.queryEvents(currentTimeMillis - (firstRun ? 600000 : 60000), currentTimeMillis);
+        long cursor = mTracker.getCursor();
+        long begin = cursor < 0 ? currentTimeMillis - FIRST_RUN_WINDOW : cursor;
+        UsageEvents queryEvents = usageStats.queryEvents(begin, currentTimeMillis);
+        if (queryEvents == null)
+            return;
 
+        mTracker.beginQuery();
         while (queryEvents.hasNextEvent()) {
-            UsageEvents.Event event = new UsageEvents.Event();
-            queryEvents.getNextEvent(event);
-            int type = event.getEventType();
-            if (type == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                text = event.getPackageName();
-                text1 = event.getClassName();
-            } else if (type == UsageEvents.Event.MOVE_TO_BACKGROUND) {
-                if (event.getPackageName().equals(text)) {
-                    text = null;
-                    text1 = null;
-                }
-            }
+            queryEvents.getNextEvent(mEvent);
+            mTracker.offer(mEvent.getEventType(), mEvent.getPackageName(), mEvent.getClassName(),
+                    mEvent.getTimeStamp());
         }
+        String pkg = mTracker.getPackageName();
+        String clas = mTracker.getClassName();
+        Foreground foreground = mForeground;
+        if (pkg == null)
+            mForeground = null;
+        else if (foreground == null || !pkg.equals(foreground.pkg) || !TextUtils.equals(clas, foreground.clas))
+            mForeground = new Foreground(pkg, clas);
     }
 
     @Override
@@ -87,31 +163,25 @@ public class MonitoringService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         INSTANCE = this;
-        Runnable runner = new Runnable() {
-            @Override
-            public void run() {
-                if (!DatabaseUtil.isShowWindow()) {
-                    mHandler.removeCallbacks(this);
-                    stopSelf();
-                    return;
-                }
-
-                getActivityInfo();
-                if (text == null) return;
+        mScheduler.start();
+        return START_STICKY;
+    }
 
-                firstRun = false;
-                if (DatabaseUtil.isShowWindow()) {
-                    WindowUtil.show(MonitoringService.this, text, text1);
-                } else {
-                    stopSelf();
-                }
+    private Boolean pollOnce() {
+        if (!DatabaseUtil.isShowWindow()) {
+            stopSelf();
+            return null;
+        }
 
-                mHandler.postDelayed(this, 500);
-            }
-        };
+        getActivityInfo();
+        Foreground foreground = mForeground;
+        if (!mTracker.consumeChanged() || foreground == null)
+            return false;
 
-        mHandler.postDelayed(runner, 500);
-        return START_STICKY;
+        ActivityHistory.record(this, foreground.pkg, foreground.clas, ActivityHistory.SOURCE_USAGE_STATS);
+        DwellMetrics.onForeground(foreground.pkg, foreground.clas, SystemClock.elapsedRealtime());
+        WindowUtil.show(this, foreground.pkg, foreground.clas);
+        return true;
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
@@ -0,0 +1,105 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.service;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import io.github.ratul.topactivity.model.PollPolicy;
+
+/**
+ * Runs a poller on its own thread and lets a {@link PollPolicy} decide how
+ * long to wait between polls.
+ */
+public class PollScheduler {
+    public interface Poller {
+        /**
+         * Runs one poll on the scheduler thread. Returns whether the
+         * foreground changed, or null to stop the scheduler.
+         */
+        Boolean poll();
+    }
+
+    private final PollPolicy mPolicy;
+    private final Poller mPoller;
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            Boolean changed = mPoller.poll();
+            if (changed == null) {
+                stop();
+                return;
+            }
+            schedule(mPolicy.onPolled(SystemClock.uptimeMillis(), changed));
+        }
+    };
+
+    public PollScheduler(PollPolicy policy, Poller poller) {
+        mPolicy = policy;
+        mPoller = poller;
+    }
+
+    public synchronized void start() {
+        if (mThread != null)
+            return;
+        mThread = new HandlerThread("MonitoringPoll");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.post(mTick);
+    }
+
+    public synchronized void stop() {
+        if (mThread == null)
+            return;
+        mHandler.removeCallbacks(mTick);
+        mThread.quitSafely();
+        mThread = null;
+        mHandler = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return mThread != null;
+    }
+
+    /**
+     * Polls right away, e.g. after the accessibility service saw a window change.
+     */
+    public void wakeUp() {
+        schedule(mPolicy.onWakeUp(SystemClock.uptimeMillis()));
+    }
+
+    public void setScreenOn(boolean screenOn) {
+        mPolicy.setScreenOn(screenOn);
+        if (screenOn) {
+            wakeUp();
+        } else {
+            schedule(PollPolicy.SUSPENDED);
+        }
+    }
+
+    private synchronized void schedule(long delay) {
+        if (mHandler == null)
+            return;
+        mHandler.removeCallbacks(mTick);
+        if (delay != PollPolicy.SUSPENDED)
+            mHandler.postDelayed(mTick, delay);
+    }
+}
@@ -31,6 +31,7 @@ import io.github.ratul.topactivity.utils.DatabaseUtil;
 import io.github.ratul.topactivity.ui.MainActivity;
 import io.github.ratul.topactivity.utils.WindowUtil;
 import io.github.ratul.topactivity.model.NotificationMonitor;
+import io.github.ratul.topactivity.model.StateBus;
 import io.github.ratul.topactivity.ui.BackgroundActivity;
 
 /**
@@ -39,12 +40,20 @@ import io.github.ratul.topactivity.ui.BackgroundActivity;
  */
 @TargetApi(Build.VERSION_CODES.N)
 public class QuickSettingsTileService extends TileService {
-	public static final String ACTION_UPDATE_TITLE = "io.github.ratul.topactivity.ACTION.UPDATE_TITLE";
-	private UpdateTileReceiver mReceiver;
+	private final StateBus.Subscriber mSubscriber = new StateBus.Subscriber() {
+		@Override
+		public void onStateChanged(int what) {
+			if (what == StateBus.WINDOW_SHOWN || what == StateBus.ACCESSIBILITY_BOUND)
+				updateTile();
+		}
+	};
 
+	/**
+	 * Asks the system to bind the tile so it can refresh itself. While it is
+	 * listening the tile follows {@link StateBus} directly.
+	 */
 	public static void updateTile(Context context) {
 		TileService.requestListeningState(context, new ComponentName(context, QuickSettingsTileService.class));
-		context.sendBroadcast(new Intent(QuickSettingsTileService.ACTION_UPDATE_TITLE));
 	}
 
 	public void updateTile() {
@@ -52,35 +61,27 @@ public class QuickSettingsTileService extends TileService {
 		getQsTile().updateTile();
 	}
 
-	@Override
-	public void onCreate() {
-		super.onCreate();
-		mReceiver = new UpdateTileReceiver();
-	}
-
 	@Override
 	public void onTileAdded() {
 		DatabaseUtil.setQSTileAdded(true);
-		sendBroadcast(new Intent(MainActivity.ACTION_STATE_CHANGED));
 	}
 
 	@Override
 	public void onTileRemoved() {
 		super.onTileRemoved();
 		DatabaseUtil.setQSTileAdded(false);
-		sendBroadcast(new Intent(MainActivity.ACTION_STATE_CHANGED));
 	}
 
 	@Override
 	public void onStartListening() {
-		registerReceiver(mReceiver, new IntentFilter(ACTION_UPDATE_TITLE));
+		StateBus.subscribe(mSubscriber, true);
 		super.onStartListening();
 		updateTile();
 	}
 
 	@Override
 	public void onStopListening() {
-		unregisterReceiver(mReceiver);
+		StateBus.unsubscribe(mSubscriber);
 		super.onStopListening();
 	}
 
@@ -96,24 +97,13 @@ public class QuickSettingsTileService extends TileService {
 		} else {
 			if (DatabaseUtil.hasAccess() && AccessibilityMonitoringService.getInstance() == null)
 				startService(new Intent().setClass(this, AccessibilityMonitoringService.class));
-			DatabaseUtil.setIsShowWindow(!DatabaseUtil.isShowWindow());
-			if (DatabaseUtil.isShowWindow()) {
-				if (WindowUtil.sWindowManager == null)
-					WindowUtil.init(this);
+			if (DatabaseUtil.toggleShowWindow()) {
 				NotificationMonitor.showNotification(this, false);
 				startService(new Intent(this, MonitoringService.class));
 			} else {
 				WindowUtil.dismiss(this);
 				NotificationMonitor.showNotification(this, true);
 			}
-			sendBroadcast(new Intent(MainActivity.ACTION_STATE_CHANGED));
-		}
-	}
-
-	class UpdateTileReceiver extends BroadcastReceiver {
-		@Override
-		public void onReceive(Context context, Intent intent) {
-			updateTile();
 		}
 	}
 }
@@ -18,7 +18,6 @@ package io.github.ratul.topactivity.ui;
 
 import android.app.Activity;
 import android.os.Bundle;
-import com.google.android.material.textview.MaterialTextView;
 import androidx.appcompat.app.AppCompatActivity;
 import io.github.ratul.topactivity.R;
 import android.view.MenuItem;
@@ -36,15 +35,32 @@ import android.text.SpannableString;
 import androidx.appcompat.app.ActionBar;
 import android.text.Spannable;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import io.github.ratul.topactivity.model.CrashLogReader;
+import io.github.ratul.topactivity.model.CrashStore;
 import io.github.ratul.topactivity.model.TypefaceSpan;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * Created by Ratul on 04/05/2022.
  */
 
 public class CrashActivity extends AppCompatActivity {
-	public static String EXTRA_CRASH_INFO = "crash";
-	private String crashInfo;
+	/**
+	 * Name of the stored crash file to show, the latest one when missing or
+	 * not a file of {@link CrashStore}.
+	 */
+	public static final String EXTRA_CRASH_FILE = "crash_file";
+	private static final int MENU_SEARCH = 1;
+	private static final int MAX_SEARCH_RESULTS = 200;
+	private ListView lines;
+	private CrashLogReader reader;
 	private boolean restart;
 
 	@Override
@@ -59,10 +75,131 @@ public class CrashActivity extends AppCompatActivity {
 		actionBar.setTitle(s);
 
 		restart = getIntent().getBooleanExtra("Restart", true);
-		String mLog = getIntent().getStringExtra(EXTRA_CRASH_INFO);
-		crashInfo = mLog;
-		MaterialTextView crashed = findViewById(R.id.crashed);
-		crashed.setText(mLog);
+		lines = findViewById(R.id.lines);
+		File file = CrashStore.find(this, getIntent().getStringExtra(EXTRA_CRASH_FILE));
+		if (file == null)
+			file = CrashStore.latest(this);
+		if (file != null)
+			load(file, 0);
+	}
+
+	/**
+	 * Indexes the file off the main thread, then shows it from the given line.
+	 */
+	private void load(final File file, final int line) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final CrashLogReader loaded;
+				try {
+					loaded = new CrashLogReader(file);
+				} catch (IOException e) {
+					e.printStackTrace();
+					return;
+				}
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						if (isFinishing())
+							return;
+						reader = loaded;
+						lines.setAdapter(new LineAdapter(loaded));
+						lines.setSelection(line);
+						ActionBar actionBar = getSupportActionBar();
+						if (actionBar != null)
+							actionBar.setSubtitle(file.getName() + " (" + CrashStore.readCount(file) + "x)");
+					}
+				});
+			}
+		}, "CrashLogLoad").start();
+	}
+
+	private class LineAdapter extends BaseAdapter {
+		private final CrashLogReader mReader;
+
+		LineAdapter(CrashLogReader reader) {
+			mReader = reader;
+		}
+
+		@Override
+		public int getCount() {
+			return mReader.getLineCount();
+		}
+
+		@Override
+		public String getItem(int position) {
+			return mReader.getLine(position);
+		}
+
+		@Override
+		public long getItemId(int position) {
+			return position;
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			View row = convertView;
+			if (row == null)
+				row = getLayoutInflater().inflate(R.layout.crash_line, parent, false);
+			// a recycled row may still be scrolled sideways
+			row.scrollTo(0, 0);
+			TextView text = row.findViewById(R.id.line);
+			text.setText(getItem(position));
+			return row;
+		}
+	}
+
+	private void showSearch() {
+		final EditText input = new EditText(this);
+		input.setSingleLine(true);
+		input.setHint("Text to find in all crash logs");
+		new MaterialAlertDialogBuilder(this).setTitle("Search").setView(input)
+				.setPositiveButton("Search", new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface di, int btn) {
+						String query = input.getText().toString();
+						if (!query.isEmpty())
+							search(query);
+					}
+				}).setNegativeButton("Cancel", null).show();
+	}
+
+	private void search(final String query) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final List<CrashLogReader.Match> matches = CrashLogReader.search(CrashStore.list(CrashActivity.this),
+						query, MAX_SEARCH_RESULTS);
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						showResults(query, matches);
+					}
+				});
+			}
+		}, "CrashLogSearch").start();
+	}
+
+	private void showResults(String query, final List<CrashLogReader.Match> matches) {
+		if (isFinishing())
+			return;
+		if (matches.isEmpty()) {
+			Toast.makeText(this, "No match for " + query, Toast.LENGTH_SHORT).show();
+			return;
+		}
+		CharSequence[] items = new CharSequence[matches.size()];
+		for (int i = 0; i < items.length; i++) {
+			CrashLogReader.Match match = matches.get(i);
+			items[i] = match.file.getName() + ":" + (match.line + 1) + "  " + match.text.trim();
+		}
+		new MaterialAlertDialogBuilder(this).setTitle(matches.size() + " matches")
+				.setItems(items, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface di, int which) {
+						CrashLogReader.Match match = matches.get(which);
+						load(match.file, match.line);
+					}
+				}).setNegativeButton("Close", null).show();
 	}
 
 	@Override
@@ -102,9 +239,13 @@ public class CrashActivity extends AppCompatActivity {
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		if (item.getItemId() == android.R.id.copy) {
+			if (reader == null)
+				return true;
 			ClipboardManager cm = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
-			cm.setPrimaryClip(ClipData.newPlainText(getPackageName(), crashInfo));
+			cm.setPrimaryClip(ClipData.newPlainText(getPackageName(), reader.getText()));
 			Toast.makeText(this, "Copied", 0).show();
+		} else if (item.getItemId() == MENU_SEARCH) {
+			showSearch();
 		} else if (item.getItemId() == android.R.id.redo) {
 			onBackPressed();
 		}
@@ -117,6 +258,10 @@ public class CrashActivity extends AppCompatActivity {
 		s.setSpan(new TypefaceSpan(this, "fonts/google_sans_regular.ttf"), 0, s.length(),
 				Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
 		menu.add(0, android.R.id.copy, 0, s);
+		s = new SpannableString("Search Logs");
+		s.setSpan(new TypefaceSpan(this, "fonts/google_sans_regular.ttf"), 0, s.length(),
+				Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+		menu.add(0, MENU_SEARCH, 0, s);
 		if (restart) {
 			s = new SpannableString("Restart App");
 			s.setSpan(new TypefaceSpan(this, "fonts/google_sans_regular.ttf"), 0, s.length(),
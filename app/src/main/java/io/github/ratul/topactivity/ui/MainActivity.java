@@ -20,19 +20,33 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import java.util.List;
+import java.util.Locale;
 import io.github.ratul.topactivity.*;
 import io.github.ratul.topactivity.utils.*;
 import io.github.ratul.topactivity.service.*;
+import io.github.ratul.topactivity.model.ActivityHistory;
+import io.github.ratul.topactivity.model.ActivityHistoryReader;
+import io.github.ratul.topactivity.model.CrashStore;
+import io.github.ratul.topactivity.model.DwellMetrics;
+import io.github.ratul.topactivity.model.StateBus;
 import io.github.ratul.topactivity.model.TypefaceSpan;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
     public static final String EXTRA_FROM_QS_TILE = "from_qs_tile";
-    public static final String ACTION_STATE_CHANGED = "io.github.ratul.topactivity.ACTION_STATE_CHANGED";
     private SwitchMaterial mWindowSwitch, mNotificationSwitch, mAccessibilitySwitch;
-    private BroadcastReceiver mReceiver;
+    private final StateBus.Subscriber mSubscriber = what -> {
+        // the switches only mirror settings, not the activity or window updates
+        if (what == StateBus.WINDOW_SHOWN || what == StateBus.TILE_ADDED
+                || what == StateBus.ACCESSIBILITY_BOUND || what == StateBus.SETTINGS)
+            updateSwitches();
+    };
     private MaterialAlertDialogBuilder fancy;
     public static MainActivity INSTANCE;
+    private static final long HISTORY_RANGE = 24 * 60 * 60 * 1000L;
 
     private final ActivityResultLauncher<String> requestPermissionLauncher =
         registerForActivityResult(new ActivityResultContracts.RequestPermission(),
@@ -44,23 +58,14 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        Trace.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         INSTANCE = this;
-
-        // Проверка разрешений на Android 13+ (POST_NOTIFICATIONS)
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            checkNotificationPermission();
-        }
-
-        if (AccessibilityMonitoringService.getInstance() == null && DatabaseUtil.hasAccess()) {
-            startService(new Intent(this, AccessibilityMonitoringService.class));
-        }
-
         DatabaseUtil.setDisplayWidth(getScreenWidth());
-        fancy = new MaterialAlertDialogBuilder(this)
-                .setNegativeButton("Close", (di, btn) -> di.dismiss())
-                .setCancelable(false);
+
+        // only what the first frame needs runs here, the rest waits for it
+        StartupMetrics.onFirstFrame(this, this::onFirstFrame);
 
         SpannableString s = new SpannableString(getString(R.string.app_name));
         s.setSpan(new TypefaceSpan(this, "fonts/google_sans_bold.ttf"), 0, s.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
@@ -78,9 +83,6 @@ public class MainActivity extends AppCompatActivity {
             findViewById(R.id.divider_useNotificationPref).setVisibility(View.INVISIBLE);
         }
 
-        mReceiver = new UpdateSwitchReceiver();
-        registerReceiver(mReceiver, new IntentFilter(ACTION_STATE_CHANGED));
-
         mNotificationSwitch.setOnCheckedChangeListener((button, isChecked) ->
                 DatabaseUtil.setNotificationToggleEnabled(!isChecked));
 
@@ -122,6 +124,30 @@ public class MainActivity extends AppCompatActivity {
         if (getIntent().getBooleanExtra(EXTRA_FROM_QS_TILE, false)) {
             mWindowSwitch.setChecked(true);
         }
+        Trace.endSection();
+    }
+
+    private void onFirstFrame() {
+        Trace.beginSection("MainActivity.onFirstFrame");
+
+        // Проверка разрешений на Android 13+ (POST_NOTIFICATIONS)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            checkNotificationPermission();
+        }
+
+        if (AccessibilityMonitoringService.getInstance() == null && DatabaseUtil.hasAccess()) {
+            startService(new Intent(this, AccessibilityMonitoringService.class));
+        }
+        Trace.endSection();
+    }
+
+    private MaterialAlertDialogBuilder getDialog() {
+        if (fancy == null) {
+            fancy = new MaterialAlertDialogBuilder(this)
+                    .setNegativeButton("Close", (di, btn) -> di.dismiss())
+                    .setCancelable(false);
+        }
+        return fancy;
     }
 
     @RequiresApi(api = Build.VERSION_CODES.TIRAMISU)
@@ -132,7 +158,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void showPermissionDialog(String title, String message, String buttonText, String action) {
-        fancy.setTitle(title)
+        getDialog().setTitle(title)
                 .setMessage(message)
                 .setPositiveButton(buttonText, (di, btn) -> {
                     Intent intent = new Intent(action);
@@ -146,25 +172,29 @@ public class MainActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (mReceiver != null) {
-            unregisterReceiver(mReceiver);
-            mReceiver = null;
-        }
+    protected void onStart() {
+        super.onStart();
+        StateBus.subscribe(mSubscriber, true);
+        // catch up with changes made while stopped
+        updateSwitches();
     }
 
-    public String readFile(File file) {
-        StringBuilder text = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                text.append(line).append("\n");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return text.toString();
+    @Override
+    protected void onStop() {
+        StateBus.unsubscribe(mSubscriber);
+        super.onStop();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add("Activity History");
+        menu.add("Dwell Metrics");
+        menu.add("Performance Report");
+        menu.add("View Inspector");
+        menu.add("Crash Log");
+        menu.add("GitHub Repo");
+        menu.add("About App");
+        return super.onCreateOptionsMenu(menu);
     }
 
     @Override
@@ -172,21 +202,42 @@ public class MainActivity extends AppCompatActivity {
         String title = item.getTitle().toString();
         switch (title) {
             case "About App":
-                fancy.setTitle("About App").setMessage("An open-source tool for Android Developers...").show();
+                getDialog().setTitle("About App").setMessage("An open-source tool for Android Developers...").show();
                 break;
             case "Crash Log":
-                String errorLog = readFile(new File(App.getCrashLogDir(), "crash.txt"));
-                if (errorLog.isEmpty())
+                File latest = CrashStore.latest(this);
+                if (latest == null)
                     showToast("No log was found", Toast.LENGTH_SHORT);
                 else {
                     Intent intent = new Intent(this, CrashActivity.class);
-                    intent.putExtra(CrashActivity.EXTRA_CRASH_INFO, errorLog);
+                    intent.putExtra(CrashActivity.EXTRA_CRASH_FILE, latest.getName());
                     intent.putExtra("Restart", false);
                     startActivity(intent);
                 }
                 break;
+            case "Activity History":
+                showHistory();
+                break;
+            case "Dwell Metrics":
+                final String report = DwellMetrics.report();
+                new MaterialAlertDialogBuilder(this)
+                        .setTitle("Dwell Metrics")
+                        .setMessage(report)
+                        .setPositiveButton("Export", (di, btn) -> exportText("dwell-metrics", report))
+                        .setNegativeButton("Close", (di, btn) -> di.dismiss())
+                        .show();
+                break;
+            case "Performance Report":
+                showPerfReport();
+                break;
+            case "View Inspector":
+                boolean inspect = !DatabaseUtil.isInspectViews();
+                DatabaseUtil.setInspectViews(inspect);
+                App.showToast(inspect ? "Overlay shows focused view and container ids" : "View inspector turned off",
+                        Toast.LENGTH_SHORT);
+                break;
             case "GitHub Repo":
-                fancy.setTitle("GitHub Repo").setMessage("Visit the official GitHub repo?")
+                getDialog().setTitle("GitHub Repo").setMessage("Visit the official GitHub repo?")
                         .setPositiveButton("Yes", (di, btn) -> {
                             di.dismiss();
                             startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("https://github.com/FlutterGenerator/Current-Activity")));
@@ -196,6 +247,106 @@ public class MainActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    private void showHistory() {
+        final long to = System.currentTimeMillis();
+        final long from = to - HISTORY_RANGE;
+        new Thread(() -> ActivityHistory.sync(() -> {
+            String summary;
+            try {
+                summary = summarizeHistory(new ActivityHistoryReader(ActivityHistory.getDirectory(this)), from, to);
+            } catch (IOException e) {
+                summary = "Could not read history: " + e.getMessage();
+            }
+            final String message = summary;
+            runOnUiThread(() -> new MaterialAlertDialogBuilder(this)
+                    .setTitle("Activity History (24h)")
+                    .setMessage(message)
+                    .setPositiveButton("Export", (di, btn) -> exportHistory(from, to))
+                    .setNegativeButton("Close", (di, btn) -> di.dismiss())
+                    .show());
+        })).start();
+    }
+
+    private void showPerfReport() {
+        final String report = StartupMetrics.getStats() + "\n" + OverlayPipeline.getMetrics() + "\n"
+                + AccessibilityMonitoringService.getFilterStats() + "\n" + ActivityIndex.getStats() + "\n";
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Performance Report")
+                .setMessage(report)
+                .setPositiveButton("Export", (di, btn) -> exportText("perf-report", report))
+                .setNegativeButton("Close", (di, btn) -> di.dismiss())
+                .show();
+    }
+
+    private static String summarizeHistory(ActivityHistoryReader reader, long from, long to) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        List<Map.Entry<String, Long>> packages = sortedByValue(reader.timePerPackage(from, to));
+        if (packages.isEmpty())
+            return "No activity was recorded yet.";
+        sb.append("Time per app:\n");
+        for (int i = 0; i < Math.min(10, packages.size()); i++) {
+            Map.Entry<String, Long> entry = packages.get(i);
+            sb.append(formatDuration(entry.getValue())).append("  ").append(entry.getKey()).append("\n");
+        }
+        List<Map.Entry<String, Long>> transitions = sortedByValue(reader.transitionCounts(from, to));
+        if (!transitions.isEmpty()) {
+            sb.append("\nTop transitions:\n");
+            for (int i = 0; i < Math.min(5, transitions.size()); i++) {
+                Map.Entry<String, Long> entry = transitions.get(i);
+                sb.append(entry.getValue()).append("x  ").append(entry.getKey()).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private void exportHistory(long from, long to) {
+        final File file = new File(getExternalFilesDir("exports"), "activity-history-" + to + ".csv");
+        new Thread(() -> {
+            String msg;
+            try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+                writer.write("start,end,package,class,source\n");
+                new ActivityHistoryReader(ActivityHistory.getDirectory(this)).forEachInterval(from, to,
+                        (start, end, pkg, clas, source) -> {
+                            try {
+                                writer.write(start + "," + end + "," + pkg + "," + clas + ","
+                                        + (source == ActivityHistory.SOURCE_ACCESSIBILITY ? "accessibility" : "usage_stats")
+                                        + "\n");
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                msg = "Exported to " + file.getAbsolutePath();
+            } catch (IOException | UncheckedIOException e) {
+                msg = "Export failed: " + e.getMessage();
+            }
+            final String toast = msg;
+            runOnUiThread(() -> App.showToast(toast, Toast.LENGTH_LONG));
+        }).start();
+    }
+
+    private void exportText(String name, String content) {
+        File file = new File(getExternalFilesDir("exports"), name + "-" + System.currentTimeMillis() + ".txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(content);
+            App.showToast("Exported to " + file.getAbsolutePath(), Toast.LENGTH_LONG);
+        } catch (IOException e) {
+            App.showToast("Export failed: " + e.getMessage(), Toast.LENGTH_LONG);
+        }
+    }
+
+    private static List<Map.Entry<String, Long>> sortedByValue(Map<String, Long> map) {
+        List<Map.Entry<String, Long>> list = new ArrayList<>(map.entrySet());
+        Collections.sort(list, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return list;
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 3600)
+            return String.format(Locale.US, "%dm %02ds", seconds / 60, seconds % 60);
+        return String.format(Locale.US, "%dh %02dm", seconds / 3600, (seconds / 60) % 60);
+    }
+
     private boolean usageStats(Context context) {
         UsageStatsManager usm = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
         long currentTime = System.currentTimeMillis();
@@ -208,12 +359,9 @@ public class MainActivity extends AppCompatActivity {
         return displayMetrics.widthPixels;
     }
 
-    class UpdateSwitchReceiver extends BroadcastReceiver {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            mWindowSwitch.setChecked(DatabaseUtil.isShowWindow());
-            mNotificationSwitch.setChecked(!DatabaseUtil.isNotificationToggleEnabled());
-            mAccessibilitySwitch.setChecked(DatabaseUtil.hasAccess());
-        }
+    private void updateSwitches() {
+        mWindowSwitch.setChecked(DatabaseUtil.isShowWindow());
+        mNotificationSwitch.setChecked(!DatabaseUtil.isNotificationToggleEnabled());
+        mAccessibilitySwitch.setChecked(DatabaseUtil.hasAccess());
     }
                                  }
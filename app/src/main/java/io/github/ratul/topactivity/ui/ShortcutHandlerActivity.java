@@ -48,17 +48,15 @@ public class ShortcutHandlerActivity extends AppCompatActivity {
 		} else if (AccessibilityMonitoringService.getInstance() == null && DatabaseUtil.hasAccess())
 			startService(new Intent().setClass(this, AccessibilityMonitoringService.class));
 
-		boolean isShow = !DatabaseUtil.isShowWindow();
-		DatabaseUtil.setIsShowWindow(isShow);
+		boolean isShow = DatabaseUtil.toggleShowWindow();
 		if (!isShow) {
 			WindowUtil.dismiss(this);
 			NotificationMonitor.showNotification(this, true);
 		} else {
-			WindowUtil.init(this);
+			// the overlay is built by its first render, not on this path
 			NotificationMonitor.showNotification(this, false);
 			startService(new Intent(this, MonitoringService.class));
 		}
-		sendBroadcast(new Intent(MainActivity.ACTION_STATE_CHANGED));
 		finish();
 	}
 }
@@ -0,0 +1,110 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-package index of declared activity class names.
+ *
+ * A package's activities are read once with GET_ACTIVITIES and kept as a
+ * sorted array, so later checks are a binary search without IPC. Aliases
+ * count with both their own and their target name. Entries are dropped when
+ * the package is added, replaced or removed.
+ */
+public class ActivityIndex {
+    private static final int MAX_PACKAGES = 64;
+    private static final String[] EMPTY = new String[0];
+
+    private static final LruCache<String, String[]> sIndex = new LruCache<String, String[]>(MAX_PACKAGES);
+    private static final AtomicLong sLookups = new AtomicLong();
+    private static final AtomicLong sBuilds = new AtomicLong();
+    private static Context sContext;
+
+    public static boolean isActivity(Context context, String pkg, String className) {
+        ensureInit(context);
+        sLookups.incrementAndGet();
+        String[] activities = sIndex.get(pkg);
+        if (activities == null) {
+            activities = build(pkg);
+            sIndex.put(pkg, activities);
+        }
+        return Arrays.binarySearch(activities, className) >= 0;
+    }
+
+    /**
+     * Unknown packages get an empty index, they are dropped again once installed.
+     */
+    private static String[] build(String pkg) {
+        sBuilds.incrementAndGet();
+        PackageInfo info;
+        try {
+            info = sContext.getPackageManager().getPackageInfo(pkg,
+                    PackageManager.GET_ACTIVITIES | PackageManager.MATCH_DISABLED_COMPONENTS);
+        } catch (PackageManager.NameNotFoundException e) {
+            return EMPTY;
+        }
+        if (info.activities == null)
+            return EMPTY;
+        String[] names = new String[info.activities.length * 2];
+        int count = 0;
+        for (ActivityInfo activity : info.activities) {
+            names[count++] = activity.name;
+            if (activity.targetActivity != null)
+                names[count++] = activity.targetActivity;
+        }
+        names = Arrays.copyOf(names, count);
+        Arrays.sort(names);
+        return names;
+    }
+
+    public static String getStats() {
+        return "activity index: packages " + sIndex.size() + "/" + MAX_PACKAGES + ", lookups " + sLookups.get()
+                + ", builds " + sBuilds.get();
+    }
+
+    private static synchronized void ensureInit(Context context) {
+        if (sContext != null)
+            return;
+        sContext = context.getApplicationContext();
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        sContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data != null)
+                    sIndex.remove(data.getSchemeSpecificPart());
+            }
+        }, packageFilter);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * LRU cache of application labels keyed by package name.
+ *
+ * Entries are dropped when a package is added, replaced or removed, and the
+ * whole cache is cleared on locale changes. The cache is saved to a small file
+ * so a cold start begins warm; restored labels are checked against the
+ * package's lastUpdateTime before they are used, since the package may have
+ * changed while no receiver was listening. Saves are throttled to one per
+ * {@link #SAVE_INTERVAL} on a background thread, and a change inside the
+ * interval is saved at its end.
+ */
+public class AppLabelCache {
+    private static final int MAX_SIZE = 256;
+    private static final int FILE_MAGIC = 0x4c424c32; // "LBL2"
+    private static final String FILE_NAME = "app_labels.bin";
+    private static final long SAVE_INTERVAL = 10000;
+
+    private static final LabelCache sCache = new LabelCache(MAX_SIZE, new LabelCache.Source() {
+        @Override
+        public LabelCache.Entry load(String pkg) {
+            return PackageSource.load(sContext, pkg);
+        }
+
+        @Override
+        public long getLastUpdateTime(String pkg) {
+            return PackageSource.getLastUpdateTime(sContext, pkg);
+        }
+    }, new Runnable() {
+        @Override
+        public void run() {
+            markDirty();
+        }
+    });
+    private static Context sContext;
+    private static Handler sWriter;
+    private static boolean sSavePending;
+    private static long sLastSave = -SAVE_INTERVAL;
+
+    private static final Runnable sSave = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (AppLabelCache.class) {
+                sSavePending = false;
+                sLastSave = SystemClock.uptimeMillis();
+            }
+            save();
+        }
+    };
+
+    /**
+     * Reads labels from the package manager, shared with the benchmarks.
+     */
+    static class PackageSource {
+        static LabelCache.Entry load(Context context, String pkg) {
+            try {
+                PackageManager pm = context.getPackageManager();
+                PackageInfo info = pm.getPackageInfo(pkg, 0);
+                return new LabelCache.Entry(pm.getApplicationLabel(info.applicationInfo).toString(),
+                        info.lastUpdateTime);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        static long getLastUpdateTime(Context context, String pkg) {
+            try {
+                return context.getPackageManager().getPackageInfo(pkg, 0).lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                return -1;
+            }
+        }
+    }
+
+    public static String get(Context context, String pkg) {
+        ensureInit(context);
+        return sCache.get(pkg);
+    }
+
+    public static long getHits() {
+        return sCache.getHits();
+    }
+
+    public static long getMisses() {
+        return sCache.getMisses();
+    }
+
+    public static String getStats() {
+        return sCache.getStats();
+    }
+
+    private static synchronized void ensureInit(Context context) {
+        if (sContext != null)
+            return;
+        sContext = context.getApplicationContext();
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        sContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data != null)
+                    sCache.remove(data.getSchemeSpecificPart());
+            }
+        }, packageFilter);
+
+        sContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                // the next save writes the new locale with no entries
+                sCache.clear();
+            }
+        }, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+
+        load();
+    }
+
+    private static File getFile() {
+        return new File(sContext.getCacheDir(), FILE_NAME);
+    }
+
+    private static void load() {
+        File file = getFile();
+        if (!file.exists())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || !Locale.getDefault().toLanguageTag().equals(in.readUTF()))
+                return;
+            sCache.read(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+        }
+    }
+
+    /**
+     * Schedules a save on the writer thread, at the end of the current
+     * interval if one happened recently.
+     */
+    private static synchronized void markDirty() {
+        if (sSavePending)
+            return;
+        sSavePending = true;
+        if (sWriter == null) {
+            HandlerThread thread = new HandlerThread("AppLabelCache");
+            thread.start();
+            sWriter = new Handler(thread.getLooper());
+        }
+        long delay = sLastSave + SAVE_INTERVAL - SystemClock.uptimeMillis();
+        sWriter.postDelayed(sSave, Math.max(0, delay));
+    }
+
+    private static void save() {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile())))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeUTF(Locale.getDefault().toLanguageTag());
+            sCache.write(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -16,73 +16,194 @@
  */
 package io.github.ratul.topactivity.utils;
 
-import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
 import io.github.ratul.topactivity.App;
+import java.util.Map;
 
 /**
  * Created by Wen on 16/02/2017.
  * Refactored by Ratul on 04/05/2022.
+ *
+ * Static facade over a {@link SettingsStore}: reads are lock-free and never
+ * touch SharedPreferences, writes are committed to disk in one batch on a
+ * background thread. The preference keys are unchanged.
  */
 public class DatabaseUtil {
-	private static SharedPreferences sp = App.getApp().getSharedPreferences("io.github.ratul.topactivity", 0);
+	public static final String KEY_WIDTH = SettingsStore.KEY_WIDTH;
+	public static final String KEY_SHOW_WINDOW = SettingsStore.KEY_SHOW_WINDOW;
+	public static final String KEY_HAS_BATTERY = SettingsStore.KEY_HAS_BATTERY;
+	public static final String KEY_APP_INIT = SettingsStore.KEY_APP_INIT;
+	public static final String KEY_HAS_ACCESS = SettingsStore.KEY_HAS_ACCESS;
+	public static final String KEY_QS_TILE_ADDED = SettingsStore.KEY_QS_TILE_ADDED;
+	public static final String KEY_NOTI_TOGGLE_ENABLED = SettingsStore.KEY_NOTI_TOGGLE_ENABLED;
+	public static final String KEY_WINDOW_X = SettingsStore.KEY_WINDOW_X;
+	public static final String KEY_WINDOW_Y = SettingsStore.KEY_WINDOW_Y;
+	public static final String KEY_INSPECT_VIEWS = SettingsStore.KEY_INSPECT_VIEWS;
+
+	private static final long COMMIT_DELAY = 200;
+
+	public interface OnChangeListener extends SettingsStore.OnChangeListener {
+	}
+
+	private static final SharedPreferences sp = App.getApp().getSharedPreferences("io.github.ratul.topactivity", 0);
+	private static Handler sWriter;
+
+	private static final SettingsStore sStore = new SettingsStore(sp.getAll(), new SettingsStore.Backend() {
+		@Override
+		public void scheduleCommit(final SettingsStore store, long delay) {
+			synchronized (DatabaseUtil.class) {
+				if (sWriter == null) {
+					HandlerThread thread = new HandlerThread("DatabaseUtil");
+					thread.start();
+					sWriter = new Handler(thread.getLooper());
+				}
+			}
+			sWriter.postDelayed(new Runnable() {
+				@Override
+				public void run() {
+					store.commit();
+				}
+			}, delay);
+		}
+
+		@Override
+		public void write(Map<String, Object> values) {
+			SharedPreferences.Editor editor = sp.edit();
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				if (entry.getValue() instanceof Integer)
+					editor.putInt(entry.getKey(), (Integer) entry.getValue());
+				else
+					editor.putBoolean(entry.getKey(), (Boolean) entry.getValue());
+			}
+			editor.commit();
+		}
+	}, COMMIT_DELAY);
+
+	/**
+	 * Loads the preferences on a background thread, so the first read on the
+	 * main thread finds the snapshot ready instead of waiting for the disk.
+	 */
+	public static void preload() {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				// touching the class runs the static initializer, which reads the file
+				getDisplayWidth();
+			}
+		}, "DatabaseUtilLoad").start();
+	}
+
+	/**
+	 * Writes pending changes now on the calling thread, e.g. before the
+	 * process is killed after a crash.
+	 */
+	public static void flush() {
+		sStore.commit();
+	}
+
+	public static void addListener(OnChangeListener listener) {
+		sStore.addListener(listener);
+	}
+
+	public static void removeListener(OnChangeListener listener) {
+		sStore.removeListener(listener);
+	}
 
 	public static int getDisplayWidth() {
-		return sp.getInt("width", 720);
+		return sStore.snapshot().width;
 	}
 
 	public static void setDisplayWidth(int width) {
-		sp.edit().putInt("width", width).apply();
+		sStore.set(KEY_WIDTH, width);
 	}
 
 	public static boolean isShowWindow() {
-		return sp.getBoolean("is_show_window", false);
+		return sStore.snapshot().showWindow;
 	}
 
 	public static boolean hasBattery() {
-		return sp.getBoolean("hasBattery", false);
+		return sStore.snapshot().hasBattery;
 	}
 
 	public static void setHasBattery(boolean bool) {
-		sp.edit().putBoolean("hasBattery", bool).apply();
+		sStore.set(KEY_HAS_BATTERY, bool);
 	}
 
 	public static void setIsShowWindow(boolean isShow) {
-		sp.edit().putBoolean("is_show_window", isShow).apply();
+		sStore.set(KEY_SHOW_WINDOW, isShow);
+	}
+
+	/**
+	 * Flips the show window flag atomically, so toggles racing from the tile,
+	 * the notification and the activity cannot lose an update.
+	 *
+	 * @return the new value
+	 */
+	public static boolean toggleShowWindow() {
+		return sStore.toggle(KEY_SHOW_WINDOW);
 	}
 
 	public static boolean appInitiated() {
-		return sp.getBoolean("app_init", false);
+		return sStore.snapshot().appInit;
 	}
 
 	public static void setAppInitiated(boolean added) {
-		sp.edit().putBoolean("app_init", added).apply();
+		sStore.set(KEY_APP_INIT, added);
 	}
 
 	public static boolean hasAccess() {
-		return sp.getBoolean("has_access", true);
+		return sStore.snapshot().hasAccess;
 	}
 
 	public static void setHasAccess(boolean added) {
-		sp.edit().putBoolean("has_access", added).apply();
+		sStore.set(KEY_HAS_ACCESS, added);
 	}
 
 	public static boolean hasQSTileAdded() {
-		return sp.getBoolean("has_qs_tile_added", false);
+		return sStore.snapshot().qsTileAdded;
 	}
 
 	public static void setQSTileAdded(boolean added) {
-		sp.edit().putBoolean("has_qs_tile_added", added).apply();
+		sStore.set(KEY_QS_TILE_ADDED, added);
 	}
 
 	public static boolean isNotificationToggleEnabled() {
-		if (!hasQSTileAdded()) {
+		SettingsStore.Snapshot snapshot = sStore.snapshot();
+		if (!snapshot.qsTileAdded) {
 			return true;
 		}
-		return sp.getBoolean("is_noti_toggle_enabled", true);
+		return snapshot.notiToggleEnabled;
 	}
 
 	public static void setNotificationToggleEnabled(boolean isEnabled) {
-		sp.edit().putBoolean("is_noti_toggle_enabled", isEnabled).apply();
+		sStore.set(KEY_NOTI_TOGGLE_ENABLED, isEnabled);
+	}
+
+	/**
+	 * Overlay window offset from the screen center, as used by its layout params.
+	 */
+	public static int getWindowX() {
+		return sStore.snapshot().windowX;
+	}
+
+	public static int getWindowY() {
+		return sStore.snapshot().windowY;
+	}
+
+	public static void setWindowPosition(int x, int y) {
+		sStore.set(KEY_WINDOW_X, x, KEY_WINDOW_Y, y);
+	}
+
+	/**
+	 * Whether the overlay also shows the focused view and container ids.
+	 */
+	public static boolean isInspectViews() {
+		return sStore.snapshot().inspectViews;
+	}
+
+	public static void setInspectViews(boolean inspect) {
+		sStore.set(KEY_INSPECT_VIEWS, inspect);
 	}
 }
@@ -0,0 +1,184 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU of application labels, keyed by package name.
+ *
+ * Every label is kept with the lastUpdateTime of the package it was read
+ * from. Entries restored from disk may be stale, since the package could
+ * have been updated or removed while the process was dead. Each one is
+ * checked against the installed package on its first hit, which is one
+ * cheap lookup instead of loading the label. Plain Java, the package
+ * manager is behind {@link Source}.
+ */
+public class LabelCache {
+    public interface Source {
+        /**
+         * Label of an installed package, or null if it is not installed.
+         */
+        Entry load(String pkg);
+
+        /**
+         * lastUpdateTime of the installed package, or -1 if it is not installed.
+         */
+        long getLastUpdateTime(String pkg);
+    }
+
+    public static final class Entry {
+        public final String label;
+        public final long lastUpdateTime;
+        volatile boolean verified;
+
+        public Entry(String label, long lastUpdateTime) {
+            this.label = label;
+            this.lastUpdateTime = lastUpdateTime;
+        }
+    }
+
+    private final int mMaxSize;
+    private final Source mSource;
+    private final Runnable mOnChange;
+    private final LinkedHashMap<String, Entry> mEntries;
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mStale = new AtomicLong();
+
+    /**
+     * @param onChange called after entries were added or removed, may be null
+     */
+    public LabelCache(final int maxSize, Source source, Runnable onChange) {
+        mMaxSize = maxSize;
+        mSource = source;
+        mOnChange = onChange;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public String get(String pkg) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(pkg);
+        }
+        if (entry != null && !entry.verified) {
+            if (mSource.getLastUpdateTime(pkg) == entry.lastUpdateTime) {
+                entry.verified = true;
+            } else {
+                mStale.incrementAndGet();
+                remove(pkg);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            mHits.incrementAndGet();
+            return entry.label;
+        }
+
+        mMisses.incrementAndGet();
+        entry = mSource.load(pkg);
+        if (entry == null)
+            return null;
+        entry.verified = true;
+        synchronized (this) {
+            mEntries.put(pkg, entry);
+        }
+        changed();
+        return entry.label;
+    }
+
+    public void remove(String pkg) {
+        Entry removed;
+        synchronized (this) {
+            removed = mEntries.remove(pkg);
+        }
+        if (removed != null)
+            changed();
+    }
+
+    public void clear() {
+        synchronized (this) {
+            mEntries.clear();
+        }
+        changed();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Writes the entries, least recently used first.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        List<Map.Entry<String, Entry>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(mEntries.entrySet());
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Entry> entry : entries) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue().label);
+            out.writeLong(entry.getValue().lastUpdateTime);
+        }
+    }
+
+    /**
+     * Adds entries written by {@link #write}, to be verified on first use.
+     */
+    public void read(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String pkg = in.readUTF();
+            Entry entry = new Entry(in.readUTF(), in.readLong());
+            synchronized (this) {
+                if (!mEntries.containsKey(pkg))
+                    mEntries.put(pkg, entry);
+            }
+        }
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    public String getStats() {
+        return "label cache: size " + size() + "/" + mMaxSize + ", hits " + mHits.get() + ", misses "
+                + mMisses.get() + ", stale " + mStale.get();
+    }
+
+    private void changed() {
+        if (mOnChange != null)
+            mOnChange.run();
+    }
+}
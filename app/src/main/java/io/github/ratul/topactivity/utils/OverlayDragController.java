@@ -0,0 +1,234 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import android.util.DisplayMetrics;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
+
+/**
+ * Drags the overlay window. Touch events only record the target position,
+ * the window is moved at most once per frame from a Choreographer callback.
+ *
+ * On release the window keeps the fling velocity with friction, then settles
+ * on the nearest side of the screen. The final position is saved once, when
+ * the window comes to rest. Positions are offsets from the screen center, as
+ * the overlay uses center gravity.
+ */
+public class OverlayDragController implements View.OnTouchListener {
+    // fraction of the velocity kept after one second of flinging
+    private static final float FRICTION = 0.02f;
+    // time constant of the snap, in seconds
+    private static final float SNAP_TIME = 0.06f;
+    private static final float STOP_VELOCITY = 50;
+
+    private final WindowManager mWindowManager;
+    private final WindowManager.LayoutParams mParams;
+    private final View mView;
+    private final int mTouchSlop;
+    private final int mMinFlingVelocity;
+    private final int mMaxFlingVelocity;
+    private VelocityTracker mVelocityTracker;
+
+    private float mDownRawX, mDownRawY;
+    private int mDownX, mDownY;
+    private boolean mDragging;
+
+    // position and velocity of the window, in pixels and pixels per second
+    private float mX, mY;
+    private float mVelocityX, mVelocityY;
+    private boolean mSettling;
+    private boolean mFrameScheduled;
+    private long mLastFrameNanos;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled = false;
+            if (mSettling)
+                step(frameTimeNanos);
+            apply();
+        }
+    };
+
+    public OverlayDragController(WindowManager windowManager, WindowManager.LayoutParams params, View view) {
+        mWindowManager = windowManager;
+        mParams = params;
+        mView = view;
+        ViewConfiguration configuration = ViewConfiguration.get(view.getContext());
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+    }
+
+    @Override
+    public boolean onTouch(View view, MotionEvent event) {
+        if (mVelocityTracker == null)
+            mVelocityTracker = VelocityTracker.obtain();
+        // track in screen coordinates, the view itself moves with the finger
+        MotionEvent screenEvent = MotionEvent.obtain(event);
+        screenEvent.setLocation(event.getRawX(), event.getRawY());
+        mVelocityTracker.addMovement(screenEvent);
+        screenEvent.recycle();
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mSettling = false;
+                mDragging = false;
+                mDownRawX = event.getRawX();
+                mDownRawY = event.getRawY();
+                mDownX = mParams.x;
+                mDownY = mParams.y;
+                mX = mDownX;
+                mY = mDownY;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                float dx = event.getRawX() - mDownRawX;
+                float dy = event.getRawY() - mDownRawY;
+                if (!mDragging && dx * dx + dy * dy < mTouchSlop * mTouchSlop)
+                    break;
+                mDragging = true;
+                mX = mDownX + dx;
+                mY = mDownY + dy;
+                scheduleFrame();
+                break;
+            case MotionEvent.ACTION_UP:
+                if (mDragging) {
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                    mVelocityX = mVelocityTracker.getXVelocity();
+                    mVelocityY = mVelocityTracker.getYVelocity();
+                    if (Math.hypot(mVelocityX, mVelocityY) < mMinFlingVelocity) {
+                        mVelocityX = 0;
+                        mVelocityY = 0;
+                    }
+                    settle();
+                }
+                recycleTracker();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                if (mDragging) {
+                    mVelocityX = 0;
+                    mVelocityY = 0;
+                    settle();
+                }
+                recycleTracker();
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Stops any running fling, e.g. when the overlay is removed.
+     */
+    public void cancel() {
+        mSettling = false;
+        if (mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+    }
+
+    private void settle() {
+        mSettling = true;
+        mLastFrameNanos = 0;
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * Advances the fling and snap by the time since the previous frame.
+     */
+    private void step(long frameTimeNanos) {
+        float dt = mLastFrameNanos == 0 ? 0.016f : (frameTimeNanos - mLastFrameNanos) / 1e9f;
+        mLastFrameNanos = frameTimeNanos;
+        dt = Math.max(0, Math.min(dt, 0.05f));
+
+        float maxX = Math.max(0, (screenWidth() - mView.getWidth()) / 2f);
+        float maxY = Math.max(0, (screenHeight() - mView.getHeight()) / 2f);
+
+        // coast with friction, bounded by the screen
+        float decay = (float) Math.pow(FRICTION, dt);
+        mX += mVelocityX * dt;
+        mY += mVelocityY * dt;
+        mVelocityX *= decay;
+        mVelocityY *= decay;
+        if (mX < -maxX || mX > maxX) {
+            mX = Math.max(-maxX, Math.min(mX, maxX));
+            mVelocityX = 0;
+        }
+        if (mY < -maxY || mY > maxY) {
+            mY = Math.max(-maxY, Math.min(mY, maxY));
+            mVelocityY = 0;
+        }
+
+        // pull towards the nearest side; once the fling fades the pull takes over
+        float targetX = (mX + mVelocityX / (float) -Math.log(FRICTION)) < 0 ? -maxX : maxX;
+        if (Math.abs(mVelocityX) < STOP_VELOCITY) {
+            mVelocityX = 0;
+            mX += (targetX - mX) * (1 - (float) Math.exp(-dt / SNAP_TIME));
+        }
+
+        boolean restingY = Math.abs(mVelocityY) < STOP_VELOCITY;
+        if (restingY)
+            mVelocityY = 0;
+        if (mVelocityX == 0 && restingY && Math.abs(targetX - mX) < 1) {
+            mX = targetX;
+            mSettling = false;
+            DatabaseUtil.setWindowPosition(Math.round(mX), Math.round(mY));
+        } else {
+            scheduleFrame();
+        }
+    }
+
+    private void apply() {
+        int x = Math.round(mX);
+        int y = Math.round(mY);
+        if (x == mParams.x && y == mParams.y)
+            return;
+        mParams.x = x;
+        mParams.y = y;
+        if (mView.isAttachedToWindow())
+            mWindowManager.updateViewLayout(mView, mParams);
+    }
+
+    private void recycleTracker() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    private int screenWidth() {
+        DisplayMetrics metrics = mView.getResources().getDisplayMetrics();
+        return metrics.widthPixels;
+    }
+
+    private int screenHeight() {
+        DisplayMetrics metrics = mView.getResources().getDisplayMetrics();
+        return metrics.heightPixels;
+    }
+}
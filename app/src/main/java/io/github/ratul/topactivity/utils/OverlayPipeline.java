@@ -0,0 +1,157 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import android.content.Context;
+
+import io.github.ratul.topactivity.model.NotificationPublisher;
+import io.github.ratul.topactivity.model.StateBus;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves overlay updates off the main thread in three stages:
+ * samplers submit package/class pairs, a resolver thread looks up labels and
+ * updates the notification and tile, and the main thread only sets text.
+ * Stages are connected by bounded queues; when a queue is full the oldest
+ * entry is dropped because only the latest foreground matters. Updates that
+ * repeat the last one are skipped at submit time and renders are aligned
+ * to frames by {@link OverlayUpdateCoalescer}.
+ */
+public class OverlayPipeline {
+    private static final int SAMPLE_QUEUE_CAPACITY = 16;
+    private static final int RENDER_QUEUE_CAPACITY = 4;
+
+    private static final ArrayBlockingQueue<Item> sSamples = new ArrayBlockingQueue<>(SAMPLE_QUEUE_CAPACITY);
+    private static final ArrayBlockingQueue<Item> sRenders = new ArrayBlockingQueue<>(RENDER_QUEUE_CAPACITY);
+    private static Thread sResolver;
+
+    private static final Stats sSampleStats = new Stats();
+    private static final Stats sRenderStats = new Stats();
+
+    static class Item {
+        final Context context;
+        final String pkg;
+        final String clas;
+        String label;
+
+        Item(Context context, String pkg, String clas) {
+            this.context = context;
+            this.pkg = pkg;
+            this.clas = clas;
+        }
+    }
+
+    static class Stats {
+        final AtomicLong offered = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        volatile int maxDepth;
+
+        void onOffer(int depth) {
+            offered.incrementAndGet();
+            if (depth > maxDepth)
+                maxDepth = depth;
+        }
+    }
+
+    private static final OverlayUpdateCoalescer sCoalescer = new OverlayUpdateCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            Item latest = null;
+            Item item;
+            int pending = 0;
+            while ((item = sRenders.poll()) != null) {
+                latest = item;
+                pending++;
+            }
+            if (latest != null) {
+                WindowUtil.render(latest.context, latest.label, latest.pkg, latest.clas);
+                sCoalescer.onRendered(pending);
+            }
+        }
+    });
+
+    /**
+     * Entry point for samplers, callable from any thread.
+     */
+    public static void submit(Context context, String pkg, String clas) {
+        if (!sCoalescer.accept(pkg, clas))
+            return;
+        StateBus.setCurrentActivity(pkg, clas);
+        ensureResolver();
+        offer(sSamples, sSampleStats, new Item(context, pkg, clas));
+    }
+
+    private static synchronized void ensureResolver() {
+        if (sResolver != null)
+            return;
+        sResolver = new Thread("OverlayResolver") {
+            @Override
+            public void run() {
+                while (true) {
+                    Item item;
+                    try {
+                        item = sSamples.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    resolve(item);
+                }
+            }
+        };
+        sResolver.setDaemon(true);
+        sResolver.start();
+    }
+
+    private static void resolve(Item item) {
+        item.label = WindowUtil.getAppName(item.context, item.pkg);
+        WindowUtil.publish(item.context, item.label, item.pkg, item.clas);
+        offer(sRenders, sRenderStats, item);
+        sCoalescer.schedule();
+    }
+
+    /**
+     * Makes the next submitted update go through even if it matches the last one.
+     */
+    public static void reset() {
+        sCoalescer.reset();
+    }
+
+    private static void offer(ArrayBlockingQueue<Item> queue, Stats stats, Item item) {
+        while (!queue.offer(item)) {
+            if (queue.poll() != null)
+                stats.dropped.incrementAndGet();
+        }
+        stats.onOffer(queue.size());
+    }
+
+    public static String getMetrics() {
+        return "sample queue: depth " + sSamples.size() + "/" + SAMPLE_QUEUE_CAPACITY
+                + ", max " + sSampleStats.maxDepth
+                + ", offered " + sSampleStats.offered.get()
+                + ", dropped " + sSampleStats.dropped.get()
+                + "\nrender queue: depth " + sRenders.size() + "/" + RENDER_QUEUE_CAPACITY
+                + ", max " + sRenderStats.maxDepth
+                + ", offered " + sRenderStats.offered.get()
+                + ", dropped " + sRenderStats.dropped.get()
+                + "\n" + sCoalescer.getStats()
+                + "\n" + NotificationPublisher.getStats()
+                + "\n" + AppLabelCache.getStats()
+                + "\n" + TypefaceRegistry.getStats();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops overlay updates that would not change what is shown and folds the
+ * remaining ones into at most one render per frame.
+ */
+public class OverlayUpdateCoalescer {
+    // created on the first schedule, so de-duplication works without a looper
+    private Handler mMainHandler;
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final AtomicLong mSkipped = new AtomicLong();
+    private final AtomicLong mRendered = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+    private final Runnable mRender;
+    private String mLastPkg;
+    private String mLastClass;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduled.set(false);
+            mRender.run();
+        }
+    };
+
+    private final Runnable mPostFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    };
+
+    public OverlayUpdateCoalescer(Runnable render) {
+        mRender = render;
+    }
+
+    /**
+     * Returns false if the package and class match the last accepted update.
+     */
+    public synchronized boolean accept(String pkg, String clas) {
+        if (Objects.equals(pkg, mLastPkg) && Objects.equals(clas, mLastClass)) {
+            mSkipped.incrementAndGet();
+            return false;
+        }
+        mLastPkg = pkg;
+        mLastClass = clas;
+        return true;
+    }
+
+    /**
+     * Forgets the last state so the next update renders even if unchanged,
+     * e.g. after the overlay was dismissed.
+     */
+    public synchronized void reset() {
+        mLastPkg = null;
+        mLastClass = null;
+    }
+
+    /**
+     * Requests a render on the next frame. Callable from any thread.
+     */
+    public void schedule() {
+        if (mScheduled.compareAndSet(false, true))
+            mainHandler().post(mPostFrame);
+    }
+
+    public void onRendered(int pending) {
+        mRendered.incrementAndGet();
+        if (pending > 1)
+            mCoalesced.addAndGet(pending - 1);
+    }
+
+    private synchronized Handler mainHandler() {
+        if (mMainHandler == null)
+            mMainHandler = new Handler(Looper.getMainLooper());
+        return mMainHandler;
+    }
+
+    public String getStats() {
+        return "overlay updates: rendered " + mRendered.get() + ", skipped " + mSkipped.get()
+                + ", coalesced " + mCoalesced.get();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Typed settings behind {@link DatabaseUtil}.
+ *
+ * Reads come from an immutable snapshot held in a volatile field, so they
+ * are lock-free. Writes swap in a new snapshot under the store's lock, queue
+ * the value for the next batched commit and then notify listeners outside
+ * the lock. Plain Java, persistence is behind {@link Backend}.
+ */
+public class SettingsStore {
+    public static final String KEY_WIDTH = "width";
+    public static final String KEY_SHOW_WINDOW = "is_show_window";
+    public static final String KEY_HAS_BATTERY = "hasBattery";
+    public static final String KEY_APP_INIT = "app_init";
+    public static final String KEY_HAS_ACCESS = "has_access";
+    public static final String KEY_QS_TILE_ADDED = "has_qs_tile_added";
+    public static final String KEY_NOTI_TOGGLE_ENABLED = "is_noti_toggle_enabled";
+    public static final String KEY_WINDOW_X = "window_x";
+    public static final String KEY_WINDOW_Y = "window_y";
+    public static final String KEY_INSPECT_VIEWS = "inspect_views";
+
+    public interface Backend {
+        /**
+         * Arranges for {@link #commit} to be called after the delay, on a background thread.
+         */
+        void scheduleCommit(SettingsStore store, long delay);
+
+        /**
+         * Persists the changed values, Integer or Boolean by key.
+         */
+        void write(Map<String, Object> values);
+    }
+
+    public interface OnChangeListener {
+        void onSettingChanged(String key);
+    }
+
+    static final class Snapshot {
+        int width;
+        boolean showWindow, hasBattery, appInit, hasAccess, qsTileAdded, notiToggleEnabled;
+        int windowX, windowY;
+        boolean inspectViews;
+
+        /**
+         * Values as stored under the preference keys, missing ones take their defaults.
+         */
+        static Snapshot read(Map<String, ?> values) {
+            Snapshot s = new Snapshot();
+            s.width = get(values, KEY_WIDTH, 720);
+            s.showWindow = get(values, KEY_SHOW_WINDOW, false);
+            s.hasBattery = get(values, KEY_HAS_BATTERY, false);
+            s.appInit = get(values, KEY_APP_INIT, false);
+            s.hasAccess = get(values, KEY_HAS_ACCESS, true);
+            s.qsTileAdded = get(values, KEY_QS_TILE_ADDED, false);
+            s.notiToggleEnabled = get(values, KEY_NOTI_TOGGLE_ENABLED, true);
+            s.windowX = get(values, KEY_WINDOW_X, 0);
+            s.windowY = get(values, KEY_WINDOW_Y, 0);
+            s.inspectViews = get(values, KEY_INSPECT_VIEWS, false);
+            return s;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T get(Map<String, ?> values, String key, T def) {
+            Object value = values.get(key);
+            return def.getClass().isInstance(value) ? (T) value : def;
+        }
+
+        Object get(String key) {
+            switch (key) {
+                case KEY_WIDTH: return width;
+                case KEY_SHOW_WINDOW: return showWindow;
+                case KEY_HAS_BATTERY: return hasBattery;
+                case KEY_APP_INIT: return appInit;
+                case KEY_HAS_ACCESS: return hasAccess;
+                case KEY_QS_TILE_ADDED: return qsTileAdded;
+                case KEY_NOTI_TOGGLE_ENABLED: return notiToggleEnabled;
+                case KEY_WINDOW_X: return windowX;
+                case KEY_WINDOW_Y: return windowY;
+                case KEY_INSPECT_VIEWS: return inspectViews;
+                default: throw new IllegalArgumentException("Unknown key: " + key);
+            }
+        }
+
+        /**
+         * A copy with one value replaced, this snapshot is left untouched.
+         */
+        Snapshot with(String key, Object value) {
+            Snapshot s = new Snapshot();
+            s.width = key.equals(KEY_WIDTH) ? (Integer) value : width;
+            s.showWindow = key.equals(KEY_SHOW_WINDOW) ? (Boolean) value : showWindow;
+            s.hasBattery = key.equals(KEY_HAS_BATTERY) ? (Boolean) value : hasBattery;
+            s.appInit = key.equals(KEY_APP_INIT) ? (Boolean) value : appInit;
+            s.hasAccess = key.equals(KEY_HAS_ACCESS) ? (Boolean) value : hasAccess;
+            s.qsTileAdded = key.equals(KEY_QS_TILE_ADDED) ? (Boolean) value : qsTileAdded;
+            s.notiToggleEnabled = key.equals(KEY_NOTI_TOGGLE_ENABLED) ? (Boolean) value : notiToggleEnabled;
+            s.windowX = key.equals(KEY_WINDOW_X) ? (Integer) value : windowX;
+            s.windowY = key.equals(KEY_WINDOW_Y) ? (Integer) value : windowY;
+            s.inspectViews = key.equals(KEY_INSPECT_VIEWS) ? (Boolean) value : inspectViews;
+            return s;
+        }
+    }
+
+    private final Backend mBackend;
+    private final long mCommitDelay;
+    private volatile Snapshot mSnapshot;
+    private final CopyOnWriteArrayList<OnChangeListener> mListeners = new CopyOnWriteArrayList<>();
+    // guarded by this
+    private final Map<String, Object> mDirty = new HashMap<>();
+    private final Object mCommitLock = new Object();
+
+    public SettingsStore(Map<String, ?> values, Backend backend, long commitDelay) {
+        mSnapshot = Snapshot.read(values);
+        mBackend = backend;
+        mCommitDelay = commitDelay;
+    }
+
+    Snapshot snapshot() {
+        return mSnapshot;
+    }
+
+    public void addListener(OnChangeListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(OnChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Sets one value, listeners are only told if it changed.
+     */
+    public void set(String key, Object value) {
+        synchronized (this) {
+            Snapshot o = mSnapshot;
+            if (o.get(key).equals(value))
+                return;
+            mSnapshot = o.with(key, value);
+            schedule(key, value);
+        }
+        notifyChanged(key);
+    }
+
+    /**
+     * Sets two values in one snapshot, listeners are told once under the first key.
+     */
+    public void set(String key, Object value, String key2, Object value2) {
+        synchronized (this) {
+            Snapshot o = mSnapshot;
+            if (o.get(key).equals(value) && o.get(key2).equals(value2))
+                return;
+            mSnapshot = o.with(key, value).with(key2, value2);
+            schedule(key, value);
+            schedule(key2, value2);
+        }
+        notifyChanged(key);
+    }
+
+    /**
+     * Flips a boolean atomically, so toggles racing from several places
+     * cannot lose an update.
+     *
+     * @return the new value
+     */
+    public boolean toggle(String key) {
+        boolean value;
+        synchronized (this) {
+            Snapshot o = mSnapshot;
+            value = !(Boolean) o.get(key);
+            mSnapshot = o.with(key, value);
+            schedule(key, value);
+        }
+        notifyChanged(key);
+        return value;
+    }
+
+    /**
+     * Writes the values changed since the last commit. Called by the backend
+     * after the commit delay, or directly to flush before the process dies.
+     */
+    public void commit() {
+        // one commit at a time, so an older batch is never written after a newer one
+        synchronized (mCommitLock) {
+            Map<String, Object> dirty;
+            synchronized (this) {
+                if (mDirty.isEmpty())
+                    return;
+                dirty = new HashMap<>(mDirty);
+                mDirty.clear();
+            }
+            mBackend.write(dirty);
+        }
+    }
+
+    /**
+     * Queues a value for the next batched commit. Caller holds the lock.
+     */
+    private void schedule(String key, Object value) {
+        boolean pending = !mDirty.isEmpty();
+        mDirty.put(key, value);
+        if (!pending)
+            mBackend.scheduleCommit(this, mCommitDelay);
+    }
+
+    private void notifyChanged(String key) {
+        for (OnChangeListener listener : mListeners)
+            listener.onSettingChanged(key);
+    }
+}
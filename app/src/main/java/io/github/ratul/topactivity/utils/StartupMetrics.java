@@ -0,0 +1,88 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Time to first frame of the launched activity, and a place for work that
+ * can wait until that frame is on screen.
+ *
+ * Times are measured from process start, so a cold launch includes the
+ * Application setup. Sections of the startup path are also marked with
+ * {@link android.os.Trace}, so they show up in a system trace.
+ */
+public class StartupMetrics {
+    private static final String TAG = "StartupMetrics";
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static long sAppCreated = -1;
+    private static long sFirstFrame = -1;
+    private static String sFirstActivity;
+
+    /**
+     * Called at the end of Application.onCreate.
+     */
+    public static void onAppCreated() {
+        sAppCreated = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+    }
+
+    /**
+     * Runs the deferred work once the activity has drawn its first frame and
+     * records the time to that frame if it is the first one of the process.
+     */
+    public static void onFirstFrame(final Activity activity, final Runnable deferred) {
+        final View decor = activity.getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                // the frame is drawn right after pre-draw, run once it has been handed off
+                sMainHandler.postAtFrontOfQueue(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (sFirstFrame < 0) {
+                            sFirstFrame = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+                            sFirstActivity = activity.getClass().getSimpleName();
+                            Log.i(TAG, getStats());
+                        }
+                        activity.reportFullyDrawn();
+                        if (deferred != null)
+                            deferred.run();
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    public static String getStats() {
+        return "startup: app created " + format(sAppCreated) + ", first frame " + format(sFirstFrame)
+                + (sFirstActivity == null ? "" : " (" + sFirstActivity + ")");
+    }
+
+    private static String format(long millis) {
+        return millis < 0 ? "-" : millis + "ms";
+    }
+}
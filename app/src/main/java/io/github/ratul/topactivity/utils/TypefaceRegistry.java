@@ -0,0 +1,129 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cache of the typefaces bundled in assets.
+ *
+ * Each font file is parsed once. {@link #preload(Context)} decodes the app's
+ * fonts on a background thread at startup. A view that asks for a font while
+ * it is still being decoded waits for that load instead of parsing the file
+ * a second time, while fonts that are already loaded or other paths are
+ * returned without waiting.
+ */
+public class TypefaceRegistry {
+    public static final String BOLD = "fonts/google_sans_bold.ttf";
+    public static final String REGULAR = "fonts/google_sans_regular.ttf";
+
+    private static final ConcurrentHashMap<String, FutureTask<Typeface>> sTypefaces = new ConcurrentHashMap<>();
+    private static final Map<String, Long> sLoadTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+    private static final AtomicInteger sRequests = new AtomicInteger();
+
+    public static Typeface getBold(Context context) {
+        return get(context, BOLD);
+    }
+
+    public static Typeface getRegular(Context context) {
+        return get(context, REGULAR);
+    }
+
+    public static Typeface get(Context context, final String path) {
+        sRequests.incrementAndGet();
+        FutureTask<Typeface> task = sTypefaces.get(path);
+        if (task == null) {
+            final AssetManager assets = context.getApplicationContext().getAssets();
+            FutureTask<Typeface> load = new FutureTask<>(new Callable<Typeface>() {
+                @Override
+                public Typeface call() {
+                    long start = SystemClock.elapsedRealtime();
+                    Typeface typeface = Typeface.createFromAsset(assets, path);
+                    sLoadTimes.put(path, SystemClock.elapsedRealtime() - start);
+                    return typeface;
+                }
+            });
+            task = sTypefaces.putIfAbsent(path, load);
+            if (task == null) {
+                // this thread won, it loads the font while others wait for it
+                task = load;
+                task.run();
+            }
+        }
+        return await(path, task);
+    }
+
+    private static Typeface await(String path, FutureTask<Typeface> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // let the next request try again, e.g. after a missing asset
+                    sTypefaces.remove(path, task);
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Decodes the bundled fonts on a background thread.
+     */
+    public static void preload(Context context) {
+        final Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                get(appContext, BOLD);
+                get(appContext, REGULAR);
+            }
+        }, "TypefacePreload");
+        thread.start();
+    }
+
+    public static String getStats() {
+        StringBuilder sb = new StringBuilder("typefaces: requests ").append(sRequests.get());
+        synchronized (sLoadTimes) {
+            sb.append(", loaded ").append(sLoadTimes.size());
+            for (Map.Entry<String, Long> entry : sLoadTimes.entrySet())
+                sb.append(", ").append(entry.getKey()).append(' ').append(entry.getValue()).append("ms");
+        }
+        return sb.toString();
+    }
+}
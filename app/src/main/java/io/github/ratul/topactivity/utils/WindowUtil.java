@@ -19,7 +19,6 @@ package io.github.ratul.topactivity.utils;
 import android.content.Context;
 import android.graphics.PixelFormat;
 import android.os.Build;
-import android.view.MotionEvent;
 import android.view.View;
 import android.view.Gravity;
 import android.view.LayoutInflater;
@@ -28,11 +27,18 @@ import android.content.ClipboardManager;
 import android.content.ClipData;
 import android.widget.Toast;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 import android.graphics.Typeface;
 import android.content.Intent;
 import com.google.android.material.imageview.ShapeableImageView;
 import io.github.ratul.topactivity.R;
+import io.github.ratul.topactivity.model.ActivityHistory;
+import io.github.ratul.topactivity.model.DwellMetrics;
+import io.github.ratul.topactivity.model.NodeInspector;
 import io.github.ratul.topactivity.model.NotificationMonitor;
+import io.github.ratul.topactivity.model.NotificationPublisher;
+import io.github.ratul.topactivity.model.StateBus;
+import io.github.ratul.topactivity.model.WindowSetTracker;
 import com.google.android.material.textview.MaterialTextView;
 import io.github.ratul.topactivity.ui.MainActivity;
 import io.github.ratul.topactivity.ui.BackgroundActivity;
@@ -42,6 +48,7 @@ import io.github.ratul.topactivity.service.AccessibilityMonitoringService;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import io.github.ratul.topactivity.App;
+import io.github.ratul.topactivity.view.OverlayInfoView;
 
 /**
  * Created by Ratul on 04/05/2022.
@@ -50,12 +57,10 @@ public class WindowUtil {
 	private static WindowManager.LayoutParams sWindowParams;
 	public static WindowManager sWindowManager;
 	private static View sView;
-	private static int xInitCord = 0;
-	private static int yInitCord = 0;
-	private static int xInitMargin = 0;
-	private static int yInitMargin = 0;
+	private static OverlayDragController sDragController;
 	private static String text, text1;
-	private static MaterialTextView appName, packageName, className;
+	private static OverlayInfoView sInfoView;
+	private static TextView sTitleView;
 	private static ClipboardManager clipboard;
 	public static boolean viewAdded = false;
 
@@ -69,14 +74,14 @@ public class WindowUtil {
 				WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE, PixelFormat.TRANSLUCENT);
 
 		sWindowParams.gravity = Gravity.CENTER;
+		sWindowParams.x = DatabaseUtil.getWindowX();
+		sWindowParams.y = DatabaseUtil.getWindowY();
 		sWindowParams.width = (DatabaseUtil.getDisplayWidth() / 2) + 300;
 		sWindowParams.windowAnimations = android.R.style.Animation_Toast;
 
 		sView = LayoutInflater.from(context).inflate(R.layout.window_tasks, null);
 		clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
-		appName = sView.findViewById(R.id.text);
-		packageName = sView.findViewById(R.id.text1);
-		className = sView.findViewById(R.id.text2);
+		sInfoView = sView.findViewById(R.id.info);
 		ShapeableImageView closeBtn = sView.findViewById(R.id.closeBtn);
 
 		closeBtn.setOnClickListener(new View.OnClickListener() {
@@ -84,60 +89,67 @@ public class WindowUtil {
 				dismiss(context);
 				DatabaseUtil.setIsShowWindow(false);
 				NotificationMonitor.cancelNotification(context);
-				context.sendBroadcast(new Intent(MainActivity.ACTION_STATE_CHANGED));
 			}
 		});
 
-		appName.setOnLongClickListener(new View.OnLongClickListener() {
+		sInfoView.setOnLongClickListener(new View.OnLongClickListener() {
 			public boolean onLongClick(View v) {
-				copyString(context, text, "App name copied");
+				int row = sInfoView.getLastTouchedRow();
+				if (row == OverlayInfoView.ROW_APP_NAME)
+					copyString(context, sInfoView.getValue(row), "App name copied");
+				else if (row == OverlayInfoView.ROW_PACKAGE)
+					copyString(context, text, "Package name copied");
+				else if (row == OverlayInfoView.ROW_VIEWS)
+					copyString(context, sInfoView.getValue(row), "View ids copied");
+				else
+					copyString(context, text1, "Class name copied");
 				return true;
 			}
 		});
 
-		packageName.setOnLongClickListener(new View.OnLongClickListener() {
-			public boolean onLongClick(View v) {
-				copyString(context, text, "Package name copied");
-				return true;
+		sTitleView = sView.findViewById(R.id.title);
+		sTitleView.setOnClickListener(new View.OnClickListener() {
+			public void onClick(View v) {
+				App.showToast(DwellMetrics.describePackage(text), Toast.LENGTH_LONG);
 			}
 		});
-
-		className.setOnLongClickListener(new View.OnLongClickListener() {
+		sTitleView.setOnLongClickListener(new View.OnLongClickListener() {
 			public boolean onLongClick(View v) {
-				copyString(context, text1, "Class name copied");
+				App.showToast(WindowSetTracker.describe(StateBus.getWindows()), Toast.LENGTH_LONG);
 				return true;
 			}
 		});
+		updateTitle();
+		updateViews();
+		StateBus.unsubscribe(sWindowsSubscriber);
+		StateBus.subscribe(sWindowsSubscriber, true);
 
-		sView.setOnTouchListener(new View.OnTouchListener() {
-			public boolean onTouch(View view, MotionEvent event) {
-				WindowManager.LayoutParams layoutParams = sWindowParams;
-
-				int xCord = (int) event.getRawX();
-				int yCord = (int) event.getRawY();
-				int xCordDestination;
-				int yCordDestination;
-				int action = event.getAction();
-
-				if (action == MotionEvent.ACTION_DOWN) {
-					xInitCord = xCord;
-					yInitCord = yCord;
-					xInitMargin = layoutParams.x;
-					yInitMargin = layoutParams.y;
-				}
-				else if (action == MotionEvent.ACTION_MOVE) {
-					int xDiffMove = xCord - xInitCord;
-					int yDiffMove = yCord - yInitCord;
-					xCordDestination = xInitMargin + xDiffMove;
-					yCordDestination = yInitMargin + yDiffMove;
-
-					layoutParams.x = xCordDestination;
-					layoutParams.y = yCordDestination;
-					sWindowManager.updateViewLayout(view, layoutParams);
-				}
-				return true;
-			}
-		});
+		sDragController = new OverlayDragController(sWindowManager, sWindowParams, sView);
+		sView.setOnTouchListener(sDragController);
+	}
+
+	private static final StateBus.Subscriber sWindowsSubscriber = new StateBus.Subscriber() {
+		@Override
+		public void onStateChanged(int what) {
+			if (what == StateBus.WINDOWS)
+				updateTitle();
+			else if (what == StateBus.VIEWS || what == StateBus.SETTINGS)
+				updateViews();
+		}
+	};
+
+	private static void updateViews() {
+		NodeInspector.Result result = StateBus.getInspection();
+		sInfoView.setViews(DatabaseUtil.isInspectViews(), result == null ? null : result.describe());
+	}
+
+	/**
+	 * Names the window count in the title when more than one app is visible,
+	 * e.g. in split-screen or with a picture-in-picture window.
+	 */
+	private static void updateTitle() {
+		int count = StateBus.getWindows().size();
+		sTitleView.setText(count > 1 ? "Activity Info (" + count + " windows)" : "Activity Info");
 	}
 
 	private static void copyString(Context context, String str, String msg) {
@@ -153,42 +165,55 @@ public class WindowUtil {
 	}
 
 	public static String getAppName(Context context, String pkg) {
-		try {
-			PackageManager pm = context.getPackageManager();
-			return pm.getApplicationLabel(pm.getApplicationInfo(pkg, 0)).toString();
-		} catch (Exception e) {
-			return "Unknown";
-		}
+		String label = AppLabelCache.get(context, pkg);
+		return label == null ? "Unknown" : label;
 	}
 
+	/**
+	 * Queues an overlay update. Safe to call from any thread, the label lookup
+	 * and the view update happen on {@link OverlayPipeline} stages.
+	 */
 	public static void show(Context context, String pkg, String clas) {
+		OverlayPipeline.submit(context, pkg, clas);
+	}
+
+	/**
+	 * UI stage of the pipeline, only touches the overlay views. The info view
+	 * has a fixed size, so new text only redraws it and the window is not relaid out.
+	 */
+	static void render(Context context, String label, String pkg, String clas) {
 		if (sWindowManager == null) {
 			init(context);
 		}
-		appName.setText(getAppName(context, pkg));
-		packageName.setText(pkg);
-		className.setText(clas);
+		text = pkg;
+		text1 = clas;
+		sInfoView.setInfo(label, pkg, clas);
 
 		if (!viewAdded) {
 			viewAdded = true;
 			if (DatabaseUtil.isShowWindow()) {
 				sWindowManager.addView(sView, sWindowParams);
 			}
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+				QuickSettingsTileService.updateTile(context);
+			}
 		}
+	}
 
-		if (NotificationMonitor.builder != null) {
-			NotificationMonitor.builder.setContentTitle(text);
-			NotificationMonitor.builder.setContentText(text1);
-			NotificationMonitor.notifManager.notify(NotificationMonitor.NOTIFICATION_ID,
-					NotificationMonitor.builder.build());
-		}
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-			QuickSettingsTileService.updateTile(context);
-		}
+	/**
+	 * Resolution stage of the pipeline, runs off the main thread.
+	 */
+	static void publish(Context context, String label, String pkg, String clas) {
+		NotificationPublisher.publish(label + " (" + pkg + ")", clas);
 	}
 
 	public static void dismiss(Context context) {
 		viewAdded = false;
+		OverlayPipeline.reset();
+		ActivityHistory.stop();
+		DwellMetrics.onStopped();
+		if (sDragController != null)
+			sDragController.cancel();
 		try {
 			sWindowManager.removeView(sView);
 		} catch (Exception e) {
@@ -21,10 +21,11 @@ import android.graphics.Canvas;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
 import com.google.android.material.textview.MaterialTextView;
+import io.github.ratul.topactivity.utils.TypefaceRegistry;
 
 public class BoldTextView extends MaterialTextView {
 	public void setBoldFont(Context context) {
-		Typeface face = Typeface.createFromAsset(context.getAssets(), "fonts/google_sans_bold.ttf");
+		Typeface face = TypefaceRegistry.getBold(context);
 		super.setTypeface(face);
 	}
 
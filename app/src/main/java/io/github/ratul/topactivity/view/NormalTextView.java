@@ -21,10 +21,11 @@ import android.graphics.Canvas;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
 import com.google.android.material.textview.MaterialTextView;
+import io.github.ratul.topactivity.utils.TypefaceRegistry;
 
 public class NormalTextView extends MaterialTextView {
     public void setRegularFont(Context context) {
-        Typeface face = Typeface.createFromAsset(context.getAssets(), "fonts/google_sans_regular.ttf"); 
+        Typeface face = TypefaceRegistry.getRegular(context);
         super.setTypeface(face);
     }
 
@@ -0,0 +1,254 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import io.github.ratul.topactivity.utils.TypefaceRegistry;
+
+/**
+ * Draws the app name, package name and class name of the overlay itself, and
+ * the inspected view ids when that is turned on.
+ *
+ * Every row has a fixed number of lines, so the view's size never depends on
+ * the text: changing it rebuilds the cached StaticLayout of that row and
+ * invalidates, it never requests a layout of the overlay window. Only showing
+ * or hiding the view ids row does.
+ */
+public class OverlayInfoView extends View {
+    public static final int ROW_APP_NAME = 0;
+    public static final int ROW_PACKAGE = 1;
+    public static final int ROW_CLASS = 2;
+    public static final int ROW_VIEWS = 3;
+
+    private static final int ROWS = 4;
+    private static final int[] MAX_LINES = {1, 2, 3, 2};
+    private static final String[] LABELS = {null, "Package name", "Class name", "View ids"};
+
+    private final TextPaint mBoldPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint mValuePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint mLabelPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mCellPaint = new Paint();
+    private final Paint mGapPaint = new Paint();
+    private final String[] mValues = new String[ROWS];
+    private final StaticLayout[] mLayouts = new StaticLayout[ROWS];
+    private final StaticLayout[] mLabelLayouts = new StaticLayout[ROWS];
+    private final int[] mRowTop = new int[ROWS + 1];
+    private final int[] mRowHeight = new int[ROWS];
+    private int mRowCount = ROW_CLASS + 1;
+    private final int mPadding;
+    private final int mLabelWidth;
+    private final int mGap;
+    private float mLastTouchY;
+
+    public OverlayInfoView(Context context) {
+        this(context, null);
+    }
+
+    public OverlayInfoView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public OverlayInfoView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        mPadding = dp(8);
+        mLabelWidth = dp(80);
+        mGap = dp(1);
+
+        Typeface bold = TypefaceRegistry.getBold(context);
+        Typeface regular = TypefaceRegistry.getRegular(context);
+        mBoldPaint.setTypeface(bold);
+        mBoldPaint.setColor(Color.WHITE);
+        mBoldPaint.setTextSize(sp(13));
+        mValuePaint.setTypeface(regular);
+        mValuePaint.setColor(Color.WHITE);
+        mValuePaint.setTextSize(sp(12));
+        mLabelPaint.setTypeface(regular);
+        mLabelPaint.setColor(Color.WHITE);
+        mLabelPaint.setTextSize(sp(13));
+        mCellPaint.setColor(0x60111111);
+        mGapPaint.setColor(0x60808080);
+        for (int row = 0; row < ROWS; row++) {
+            int height = lineHeight(row == ROW_APP_NAME ? mBoldPaint : mValuePaint) * MAX_LINES[row];
+            if (LABELS[row] != null)
+                height = Math.max(height, lineHeight(mLabelPaint) * 2);
+            mRowHeight[row] = height + mPadding * 2;
+        }
+        setLongClickable(true);
+    }
+
+    /**
+     * Updates the rows, only the ones whose text changed are re-laid out.
+     */
+    public void setInfo(String appName, String pkg, String clas) {
+        boolean changed = setValue(ROW_APP_NAME, appName);
+        changed |= setValue(ROW_PACKAGE, pkg);
+        changed |= setValue(ROW_CLASS, clas);
+        if (changed)
+            invalidate();
+    }
+
+    /**
+     * Shows or hides the view ids row, the text may be null.
+     */
+    public void setViews(boolean shown, String text) {
+        int rowCount = shown ? ROWS : ROW_CLASS + 1;
+        if (rowCount != mRowCount) {
+            mRowCount = rowCount;
+            requestLayout();
+        }
+        if (setValue(ROW_VIEWS, text))
+            invalidate();
+    }
+
+    public String getValue(int row) {
+        return mValues[row];
+    }
+
+    /**
+     * Row under the last touch, used to pick what a long press copies.
+     */
+    public int getLastTouchedRow() {
+        for (int row = 0; row < mRowCount; row++) {
+            if (mLastTouchY < mRowTop[row + 1])
+                return row;
+        }
+        return mRowCount - 1;
+    }
+
+    private boolean setValue(int row, String value) {
+        if (TextUtils.equals(mValues[row], value))
+            return false;
+        mValues[row] = value;
+        mLayouts[row] = null;
+        return true;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int height = mGap * (mRowCount - 1);
+        for (int row = 0; row < mRowCount; row++)
+            height += mRowHeight[row];
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        for (int row = 0; row < ROWS; row++) {
+            mLayouts[row] = null;
+            mLabelLayouts[row] = null;
+        }
+        int top = 0;
+        for (int row = 0; row < ROWS; row++) {
+            mRowTop[row] = top;
+            top += mRowHeight[row] + (row < ROWS - 1 ? mGap : 0);
+        }
+        mRowTop[ROWS] = top;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN)
+            mLastTouchY = event.getY();
+        return super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int width = getWidth();
+        for (int row = 0; row < mRowCount; row++) {
+            int top = mRowTop[row];
+            int bottom = top + mRowHeight[row];
+            int valueLeft = 0;
+            if (row > 0)
+                canvas.drawRect(0, top - mGap, width, top, mGapPaint);
+
+            if (LABELS[row] != null) {
+                canvas.drawRect(0, top, mLabelWidth, bottom, mCellPaint);
+                StaticLayout label = labelLayout(row);
+                canvas.save();
+                canvas.translate(mPadding, top + (bottom - top - label.getHeight()) / 2f);
+                label.draw(canvas);
+                canvas.restore();
+                valueLeft = mLabelWidth + mGap;
+            }
+
+            canvas.drawRect(valueLeft, top, width, bottom, mCellPaint);
+            StaticLayout value = valueLayout(row, width - valueLeft - mPadding * 2);
+            if (value != null) {
+                canvas.save();
+                canvas.translate(valueLeft + mPadding, top + mPadding);
+                value.draw(canvas);
+                canvas.restore();
+            }
+        }
+    }
+
+    private StaticLayout valueLayout(int row, int width) {
+        if (mLayouts[row] == null && mValues[row] != null && width > 0) {
+            mLayouts[row] = build(mValues[row], row == ROW_APP_NAME ? mBoldPaint : mValuePaint, width,
+                    MAX_LINES[row], Layout.Alignment.ALIGN_NORMAL);
+        }
+        return mLayouts[row];
+    }
+
+    private StaticLayout labelLayout(int row) {
+        if (mLabelLayouts[row] == null) {
+            mLabelLayouts[row] = build(LABELS[row], mLabelPaint, mLabelWidth - mPadding * 2, 2,
+                    Layout.Alignment.ALIGN_CENTER);
+        }
+        return mLabelLayouts[row];
+    }
+
+    private static StaticLayout build(String text, TextPaint paint, int width, int maxLines,
+            Layout.Alignment alignment) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                .setAlignment(alignment)
+                .setMaxLines(maxLines)
+                .setEllipsize(TextUtils.TruncateAt.END)
+                .setIncludePad(false)
+                .build();
+    }
+
+    private static int lineHeight(TextPaint paint) {
+        Paint.FontMetricsInt fm = paint.getFontMetricsInt();
+        return fm.descent - fm.ascent;
+    }
+
+    private int dp(int value) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value,
+                getResources().getDisplayMetrics());
+    }
+
+    private float sp(int value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, value, getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timing for the JVM benchmarks: a case is warmed up, then timed in several
+ * rounds, and the median is reported as one stable "name: value ns/op" line.
+ *
+ * Every result is also written as name.json to the directory in the
+ * benchmark.dir system property, build/benchmark-results of the module by
+ * default, together with the warmup and round counts it was measured with,
+ * so the results of two builds can be compared by a script.
+ */
+final class Bench {
+    static final int WARMUP_ROUNDS = 3;
+    static final int ROUNDS = 7;
+
+    // keeps results alive so the work is not optimized away
+    static volatile long sink;
+
+    interface Case {
+        /**
+         * Runs one round and returns the number of operations done.
+         */
+        int run();
+    }
+
+    private Bench() {
+    }
+
+    /**
+     * Median ns per operation over the default rounds, printed and written under the name.
+     */
+    static double measure(String name, Case test) {
+        return measure(name, WARMUP_ROUNDS, ROUNDS, test);
+    }
+
+    /**
+     * Median ns per operation over the given rounds, printed and written under the name.
+     */
+    static double measure(String name, int warmupRounds, int rounds, Case test) {
+        for (int i = 0; i < warmupRounds; i++)
+            test.run();
+        double[] nsPerOp = new double[rounds];
+        int ops = 0;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            ops = test.run();
+            nsPerOp[i] = (System.nanoTime() - start) / (double) ops;
+        }
+        double[] sorted = nsPerOp.clone();
+        Arrays.sort(sorted);
+        double median = sorted[rounds / 2];
+        System.out.println(String.format(Locale.US, "%s: %.1f ns/op (min %.1f, max %.1f)", name, median,
+                sorted[0], sorted[rounds - 1]));
+        write(name, warmupRounds, ops, nsPerOp, median, sorted[0], sorted[rounds - 1]);
+        return median;
+    }
+
+    private static void write(String name, int warmupRounds, int ops, double[] nsPerOp, double median,
+            double min, double max) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"name\": \"").append(name).append("\",\n");
+        sb.append("  \"jvm\": \"").append(System.getProperty("java.vm.name")).append(' ')
+                .append(System.getProperty("java.version")).append("\",\n");
+        sb.append("  \"warmupRounds\": ").append(warmupRounds).append(",\n");
+        sb.append("  \"rounds\": ").append(nsPerOp.length).append(",\n");
+        sb.append("  \"opsPerRound\": ").append(ops).append(",\n");
+        sb.append(String.format(Locale.US, "  \"medianNsPerOp\": %.1f,\n", median));
+        sb.append(String.format(Locale.US, "  \"minNsPerOp\": %.1f,\n", min));
+        sb.append(String.format(Locale.US, "  \"maxNsPerOp\": %.1f,\n", max));
+        sb.append("  \"roundNsPerOp\": [");
+        for (int i = 0; i < nsPerOp.length; i++)
+            sb.append(i == 0 ? "" : ", ").append(String.format(Locale.US, "%.1f", nsPerOp[i]));
+        sb.append("]\n}\n");
+
+        File dir = new File(System.getProperty("benchmark.dir", "build/benchmark-results"));
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new UncheckedIOException(new IOException("Cannot create " + dir));
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, name + ".json")),
+                StandardCharsets.UTF_8)) {
+            out.write(sb.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
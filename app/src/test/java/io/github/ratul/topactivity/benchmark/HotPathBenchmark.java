@@ -0,0 +1,133 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.benchmark;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import io.github.ratul.topactivity.model.ForegroundTracker;
+import io.github.ratul.topactivity.utils.LabelCache;
+import io.github.ratul.topactivity.utils.OverlayUpdateCoalescer;
+
+/**
+ * The per-event work of the monitoring loop: foreground state resolution,
+ * label lookups and overlay de-duplication, on a synthetic event stream.
+ * Every case runs on its own instances, so nothing here touches the
+ * counters the app reports. System class filtering is measured by
+ * {@link SystemClassFilterBenchmark}.
+ */
+public class HotPathBenchmark {
+    // each round is one pass over the event stream
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int PACKAGES = 16;
+    private static final int EVENTS = 4096;
+
+    private static final int[] TYPES = new int[EVENTS];
+    private static final String[] PKGS = new String[EVENTS];
+    private static final String[] CLASSES = new String[EVENTS];
+
+    static {
+        for (int i = 0; i < EVENTS; i++) {
+            int app = (i / 2) % PACKAGES;
+            // foreground and background pairs, with some repeats like real streams have
+            TYPES[i] = i % 2 == 0 || i % 7 == 0 ? ForegroundTracker.MOVE_TO_FOREGROUND
+                    : ForegroundTracker.MOVE_TO_BACKGROUND;
+            PKGS[i] = "com.example.app" + app;
+            CLASSES[i] = PKGS[i] + ".ui.Activity" + (i % 3);
+        }
+    }
+
+    /**
+     * Every package is installed and never updated, so after the first
+     * round each lookup is a verified hit.
+     */
+    private static class FakeSource implements LabelCache.Source {
+        int loads;
+
+        @Override
+        public LabelCache.Entry load(String pkg) {
+            loads++;
+            return new LabelCache.Entry(pkg.substring(pkg.lastIndexOf('.') + 1), 1);
+        }
+
+        @Override
+        public long getLastUpdateTime(String pkg) {
+            return 1;
+        }
+    }
+
+    @Test
+    public void foregroundTracker() {
+        Bench.measure("foreground_tracker", WARMUP_ROUNDS, ROUNDS, new Bench.Case() {
+            @Override
+            public int run() {
+                ForegroundTracker tracker = new ForegroundTracker();
+                int changes = 0;
+                long time = 0;
+                for (int i = 0; i < EVENTS; i++) {
+                    if (i % 5 != 0)
+                        time += 10;
+                    if (tracker.isConsumed(time, 0))
+                        continue;
+                    tracker.onEvent(TYPES[i], PKGS[i], CLASSES[i], time);
+                    if (tracker.consumeChanged())
+                        changes++;
+                }
+                Bench.sink += changes;
+                return EVENTS;
+            }
+        });
+    }
+
+    @Test
+    public void labelCacheHit() {
+        FakeSource source = new FakeSource();
+        final LabelCache cache = new LabelCache(64, source, null);
+        Bench.measure("label_cache_hit", WARMUP_ROUNDS, ROUNDS, new Bench.Case() {
+            @Override
+            public int run() {
+                int length = 0;
+                for (int i = 0; i < EVENTS; i++)
+                    length += cache.get(PKGS[i]).length();
+                Bench.sink += length;
+                return EVENTS;
+            }
+        });
+        assertEquals(PACKAGES, source.loads);
+    }
+
+    @Test
+    public void overlayDedupe() {
+        Bench.measure("overlay_dedupe", WARMUP_ROUNDS, ROUNDS, new Bench.Case() {
+            @Override
+            public int run() {
+                OverlayUpdateCoalescer coalescer = new OverlayUpdateCoalescer(null);
+                int accepted = 0;
+                for (int i = 0; i < EVENTS; i++) {
+                    // every update is sent twice, as both services report it
+                    int event = i / 2;
+                    if (coalescer.accept(PKGS[event], CLASSES[event]))
+                        accepted++;
+                }
+                Bench.sink += accepted;
+                return EVENTS;
+            }
+        });
+    }
+}
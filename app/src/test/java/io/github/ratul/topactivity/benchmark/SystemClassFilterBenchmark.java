@@ -0,0 +1,111 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.github.ratul.topactivity.model.SystemClassFilter;
+
+/**
+ * The prefix trie against the class loader probe it replaced, over class
+ * names taken from window state events on a phone.
+ *
+ * On the JVM no android.* class can be loaded, so every probe takes the
+ * ClassNotFoundException path. On a device that is what every app activity
+ * does, which is the common case the trie was written for.
+ */
+public class SystemClassFilterBenchmark {
+    private static final int EVENTS = 4096;
+
+    // class names of window state events as they arrive, with the expected verdict
+    private static final String[] EVENT_CLASSES = {
+            "com.google.android.apps.nexuslauncher.NexusLauncherActivity",
+            "android.widget.FrameLayout",
+            "com.whatsapp.HomeActivity",
+            "com.whatsapp.Conversation",
+            "android.inputmethodservice.SoftInputWindow",
+            "org.telegram.ui.LaunchActivity",
+            "android.app.Dialog",
+            "androidx.appcompat.app.AlertDialog",
+            "com.android.settings.Settings$WifiSettingsActivity",
+            "com.android.internal.app.ResolverActivity",
+            "com.android.internal.app.ChooserActivity",
+            "android.widget.Toast$TN",
+            "com.google.android.youtube.app.watchwhile.WatchWhileActivity",
+            "com.google.android.material.bottomsheet.BottomSheetDialog",
+            "android.support.v7.app.AlertDialog",
+            "com.android.systemui.recents.RecentsActivity",
+            "android.widget.PopupWindow$PopupDecorView",
+            "com.instagram.mainactivity.MainActivity",
+            "io.github.ratul.topactivity.ui.MainActivity",
+            "android.view.ViewGroup",
+    };
+    private static final boolean[] EXPECTED = {
+            false, true, false, false, true, false, true, false, false, true,
+            true, true, false, false, false, false, true, false, false, true,
+    };
+
+    @Test
+    public void trieClassifiesEventClasses() {
+        for (int i = 0; i < EVENT_CLASSES.length; i++)
+            assertEquals(EVENT_CLASSES[i], EXPECTED[i], SystemClassFilter.isSystemClass(EVENT_CLASSES[i]));
+    }
+
+    @Test
+    public void trieIsFasterThanClassLoading() {
+        double trie = Bench.measure("system_class_filter.trie", new Bench.Case() {
+            @Override
+            public int run() {
+                int system = 0;
+                for (int i = 0; i < EVENTS; i++) {
+                    if (SystemClassFilter.isSystemClass(EVENT_CLASSES[i % EVENT_CLASSES.length]))
+                        system++;
+                }
+                Bench.sink += system;
+                return EVENTS;
+            }
+        });
+        double loader = Bench.measure("system_class_filter.class_loader", new Bench.Case() {
+            @Override
+            public int run() {
+                int system = 0;
+                for (int i = 0; i < EVENTS; i++) {
+                    if (isSystemClassByLoading(EVENT_CLASSES[i % EVENT_CLASSES.length]))
+                        system++;
+                }
+                Bench.sink += system;
+                return EVENTS;
+            }
+        });
+        assertTrue("trie " + trie + " ns/op, class loader " + loader + " ns/op", trie * 10 < loader);
+    }
+
+    /**
+     * What AccessibilityMonitoringService.isSystemClass did before the trie.
+     */
+    private static boolean isSystemClassByLoading(String className) {
+        try {
+            ClassLoader.getSystemClassLoader().loadClass(className);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ActivityHistoryReaderTest {
+    private static final long T = 1000000;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Writes a segment in the format of {@link ActivityHistory}, a null package is a stop record.
+     */
+    private class SegmentWriter {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        final HashMap<String, Integer> strings = new HashMap<>();
+        final long startTime;
+        long lastTime;
+
+        SegmentWriter(long startTime) {
+            this.startTime = startTime;
+            lastTime = startTime;
+            buffer.putInt(ActivityHistory.MAGIC);
+            buffer.putLong(startTime);
+        }
+
+        SegmentWriter event(long time, String pkg, String clas) {
+            int pkgId = intern(pkg);
+            int classId = intern(clas);
+            buffer.put(ActivityHistory.TAG_EVENT);
+            ActivityHistory.putVarLong(buffer, time - lastTime);
+            ActivityHistory.putVarLong(buffer, pkgId);
+            ActivityHistory.putVarLong(buffer, classId);
+            buffer.put((byte) ActivityHistory.SOURCE_USAGE_STATS);
+            lastTime = time;
+            return this;
+        }
+
+        SegmentWriter stop(long time) {
+            return event(time, null, null);
+        }
+
+        private int intern(String str) {
+            if (str == null)
+                return 0;
+            Integer id = strings.get(str);
+            if (id == null) {
+                byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                buffer.put(ActivityHistory.TAG_STRING);
+                ActivityHistory.putVarLong(buffer, bytes.length);
+                buffer.put(bytes);
+                id = strings.size() + 1;
+                strings.put(str, id);
+            }
+            return id;
+        }
+
+        void save() throws IOException {
+            File file = new File(mFolder.getRoot(), startTime + ActivityHistory.SEGMENT_SUFFIX);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(buffer.array(), 0, buffer.position());
+            }
+        }
+    }
+
+    private List<String> intervals(long from, long to) throws IOException {
+        final List<String> result = new ArrayList<>();
+        new ActivityHistoryReader(mFolder.getRoot()).forEachInterval(from, to,
+                (start, end, pkg, clas, source) -> result.add((start - T) + ".." + (end - T) + " " + pkg));
+        return result;
+    }
+
+    @Test
+    public void lastActivityStaysInFrontUntilTheNextEvent() throws IOException {
+        new SegmentWriter(T).event(T, "a", "A").event(T + 100, "b", "B").save();
+        assertEquals(listOf("0..100 a", "100..500 b"), intervals(T, T + 500));
+    }
+
+    @Test
+    public void stopRecordEndsTheInterval() throws IOException {
+        new SegmentWriter(T).event(T, "a", "A").stop(T + 100).event(T + 400, "b", "B").save();
+        assertEquals(listOf("0..100 a", "400..500 b"), intervals(T, T + 500));
+    }
+
+    @Test
+    public void nothingIsInFrontAfterATrailingStop() throws IOException {
+        new SegmentWriter(T).event(T, "a", "A").stop(T + 100).save();
+        assertEquals(listOf("0..100 a"), intervals(T, T + 500));
+        // queried from inside the stopped period
+        assertEquals(listOf(), intervals(T + 200, T + 500));
+    }
+
+    @Test
+    public void stopInAnEarlierSegmentEndsItsLastInterval() throws IOException {
+        new SegmentWriter(T).event(T, "a", "A").stop(T + 100).save();
+        new SegmentWriter(T + 1000).event(T + 1000, "b", "B").save();
+        assertEquals(listOf("0..100 a", "1000..1500 b"), intervals(T, T + 1500));
+    }
+
+    @Test
+    public void intervalContinuesIntoTheNextSegmentWithoutAStop() throws IOException {
+        new SegmentWriter(T).event(T, "a", "A").save();
+        new SegmentWriter(T + 1000).event(T + 1000, "b", "B").save();
+        assertEquals(listOf("0..1000 a", "1000..1500 b"), intervals(T, T + 1500));
+    }
+
+    @Test
+    public void zeroLengthVisitIsSkipped() throws IOException {
+        // what a resumed writer leaves for a process that died without a stop
+        new SegmentWriter(T).event(T, "a", "A").stop(T).event(T + 100, "b", "B").save();
+        assertEquals(listOf("100..200 b"), intervals(T, T + 200));
+    }
+
+    @Test
+    public void stopIsNotATransition() throws IOException {
+        new SegmentWriter(T).event(T, "a", "A").event(T + 100, "b", "B").stop(T + 200)
+                .event(T + 300, "a", "A").save();
+        Map<String, Long> transitions = new ActivityHistoryReader(mFolder.getRoot()).transitionCounts(T, T + 400);
+        assertEquals(Long.valueOf(1), transitions.get("a/A -> b/B"));
+        assertNull(transitions.get("b/B -> a/A"));
+    }
+
+    @Test
+    public void indexPassReportsTheTail() throws IOException {
+        new SegmentWriter(T).event(T, "a", "A").event(T + 100, "b", "B").save();
+        File file = ActivityHistoryReader.listSegments(mFolder.getRoot())[0];
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            // an event cut short by a killed writer
+            out.write(new byte[] {ActivityHistory.TAG_EVENT, (byte) 0x80});
+        }
+        ActivityHistoryReader.Segment segment = ActivityHistoryReader.readSegment(file);
+        assertEquals(file.length() - 2, segment.end);
+        assertEquals(T + 100, segment.lastTime);
+        assertEquals(4, segment.stringCount);
+        assertEquals("b", segment.string(segment.lastPkgId));
+    }
+
+    private static List<String> listOf(String... items) {
+        List<String> list = new ArrayList<>();
+        for (String item : items)
+            list.add(item);
+        return list;
+    }
+}
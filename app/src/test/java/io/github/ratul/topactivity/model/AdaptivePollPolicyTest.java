@@ -0,0 +1,119 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Drives the policy from a virtual clock the way PollScheduler does: every
+ * returned delay advances the clock to the next poll.
+ */
+public class AdaptivePollPolicyTest {
+    private static final long FAST = 250;
+    private static final long FAST_WINDOW = 3000;
+    private static final long MIN = 500;
+    private static final long MAX = 5000;
+
+    private final AdaptivePollPolicy mPolicy = new AdaptivePollPolicy(FAST, FAST_WINDOW, MIN, MAX);
+    private long mNow = 10000;
+
+    @Test
+    public void pollsFastAfterAChange() {
+        assertEquals(FAST, poll(true));
+        // still inside the fast window
+        while (mNow < 10000 + FAST_WINDOW - FAST)
+            assertEquals(FAST, poll(false));
+    }
+
+    @Test
+    public void backsOffExponentiallyWhileStable() {
+        poll(true);
+        skipFastWindow();
+        assertEquals(500, poll(false));
+        assertEquals(1000, poll(false));
+        assertEquals(2000, poll(false));
+        assertEquals(4000, poll(false));
+        assertEquals(MAX, poll(false));
+        assertEquals(MAX, poll(false));
+    }
+
+    @Test
+    public void changeResetsTheBackoff() {
+        poll(true);
+        skipFastWindow();
+        for (int i = 0; i < 6; i++)
+            poll(false);
+        assertEquals(FAST, poll(true));
+        skipFastWindow();
+        assertEquals(MIN, poll(false));
+    }
+
+    @Test
+    public void suspendsWithTheScreenOffAndRestartsFromMin() {
+        poll(true);
+        skipFastWindow();
+        for (int i = 0; i < 6; i++)
+            poll(false);
+
+        mPolicy.setScreenOn(false);
+        assertEquals(PollPolicy.SUSPENDED, poll(false));
+        assertEquals(PollPolicy.SUSPENDED, poll(true));
+        assertEquals(PollPolicy.SUSPENDED, mPolicy.onWakeUp(mNow));
+
+        mPolicy.setScreenOn(true);
+        mNow += 60000;
+        assertEquals(MIN, poll(false));
+    }
+
+    @Test
+    public void wakeUpPollsNowAndThenFast() {
+        poll(true);
+        skipFastWindow();
+        for (int i = 0; i < 6; i++)
+            poll(false);
+
+        assertEquals(0, mPolicy.onWakeUp(mNow));
+        assertEquals(FAST, poll(false));
+    }
+
+    @Test
+    public void stableHourNeedsFewPolls() {
+        poll(true);
+        int polls = 0;
+        long end = mNow + 3600000;
+        while (mNow < end) {
+            poll(false);
+            polls++;
+        }
+        // a fixed 500 ms loop would have polled 7200 times
+        assertTrue("polls " + polls, polls < 750);
+    }
+
+    private long poll(boolean changed) {
+        long delay = mPolicy.onPolled(mNow, changed);
+        if (delay > 0)
+            mNow += delay;
+        return delay;
+    }
+
+    private void skipFastWindow() {
+        mNow += FAST_WINDOW;
+    }
+}
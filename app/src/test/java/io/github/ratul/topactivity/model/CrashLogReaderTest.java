@@ -0,0 +1,111 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CrashLogReaderTest {
+    private static final int PAGE = 4096;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File write(String name, String text) throws IOException {
+        File file = mFolder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    @Test
+    public void linesAcrossPageBoundariesAndIndexGrowth() throws IOException {
+        // more lines than the initial index holds, several pages long, with
+        // multi-byte characters and CRLF endings falling on page edges
+        List<String> lines = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int bytes = 0;
+        for (int i = 0; bytes < 3 * PAGE || lines.size() < 600; i++) {
+            String line = "\tat io.github.ratul.Frame" + i + ".run(Frame.java:" + i + ") é中";
+            lines.add(line);
+            String ending = i % 7 == 0 ? "\r\n" : "\n";
+            text.append(line).append(ending);
+            bytes += (line + ending).getBytes(StandardCharsets.UTF_8).length;
+        }
+        CrashLogReader reader = new CrashLogReader(write("crash-big.txt", text.toString()));
+        assertEquals(lines.size(), reader.getLineCount());
+        for (int i = 0; i < lines.size(); i++)
+            assertEquals(lines.get(i), reader.getLine(i));
+        assertEquals(text.toString(), reader.getText());
+    }
+
+    @Test
+    public void lineStartingExactlyOnAPageBoundary() throws IOException {
+        StringBuilder first = new StringBuilder();
+        while (first.length() < PAGE - 1)
+            first.append('x');
+        CrashLogReader reader = new CrashLogReader(write("crash-page.txt", first + "\nsecond\n"));
+        assertEquals(2, reader.getLineCount());
+        assertEquals(first.toString(), reader.getLine(0));
+        assertEquals("second", reader.getLine(1));
+    }
+
+    @Test
+    public void lastLineWithoutNewline() throws IOException {
+        CrashLogReader reader = new CrashLogReader(write("crash-tail.txt", "first\nsecond\nlast"));
+        assertEquals(3, reader.getLineCount());
+        assertEquals("second", reader.getLine(1));
+        assertEquals("last", reader.getLine(2));
+    }
+
+    @Test
+    public void emptyFileHasNoLines() throws IOException {
+        CrashLogReader reader = new CrashLogReader(write("crash-empty.txt", ""));
+        assertEquals(0, reader.getLineCount());
+        assertEquals("", reader.getText());
+    }
+
+    @Test
+    public void searchIgnoresCaseAndStopsAtTheLimit() throws IOException {
+        File first = write("crash-a.txt", "java.lang.NullPointerException\nat Foo\n");
+        File second = write("crash-b.txt", "caused by: NULLPOINTEREXCEPTION\nnullpointerexception again");
+        File[] files = { first, second };
+
+        List<CrashLogReader.Match> matches = CrashLogReader.search(files, "NullPointer", 10);
+        assertEquals(3, matches.size());
+        assertSame(first, matches.get(0).file);
+        assertEquals(0, matches.get(0).line);
+        assertSame(second, matches.get(2).file);
+        assertEquals(1, matches.get(2).line);
+        assertEquals("nullpointerexception again", matches.get(2).text);
+
+        assertEquals(2, CrashLogReader.search(files, "nullpointer", 2).size());
+        assertEquals(0, CrashLogReader.search(files, "OutOfMemory", 10).size());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CrashStoreTest {
+    private static final long T = 1500000000000L;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static Throwable crash(String message, int line, String method) {
+        IllegalStateException cause = new IllegalStateException("cause of " + message);
+        cause.setStackTrace(new StackTraceElement[] {
+                new StackTraceElement("io.github.ratul.topactivity.utils.DatabaseUtil", "read", "DatabaseUtil.java", line),
+        });
+        RuntimeException throwable = new RuntimeException(message, cause);
+        throwable.setStackTrace(new StackTraceElement[] {
+                new StackTraceElement("io.github.ratul.topactivity.utils.WindowUtil", method, "WindowUtil.java", line + 10),
+                new StackTraceElement("android.os.Handler", "dispatchMessage", "Handler.java", 106),
+        });
+        return throwable;
+    }
+
+    @Test
+    public void fingerprintIgnoresLineNumbersAndMessages() {
+        String fingerprint = CrashStore.fingerprint(crash("first", 10, "show"));
+        assertEquals(fingerprint, CrashStore.fingerprint(crash("second", 42, "show")));
+        assertNotEquals(fingerprint, CrashStore.fingerprint(crash("first", 10, "dismiss")));
+    }
+
+    @Test
+    public void repeatedCrashBumpsItsCount() throws IOException {
+        CrashStore store = new CrashStore(mFolder.getRoot());
+        File file = store.write("abc", "log");
+        assertEquals(1, CrashStore.readCount(file));
+        assertEquals(file, store.write("abc", "log again"));
+        assertEquals(2, CrashStore.readCount(file));
+        assertEquals(1, CrashStore.list(mFolder.getRoot()).length);
+    }
+
+    @Test
+    public void rotationDeletesTheOldestFiles() throws IOException {
+        CrashStore store = new CrashStore(mFolder.getRoot());
+        int crashes = CrashStore.MAX_FILES + 2;
+        for (int i = 0; i < crashes; i++) {
+            File file = store.write("f" + i, "log " + i);
+            // the newest file is the one just written, the rest are older by their index
+            assertTrue(file.setLastModified(T + i * 1000));
+        }
+        File[] files = CrashStore.list(mFolder.getRoot());
+        assertEquals(CrashStore.MAX_FILES, files.length);
+        List<String> names = new ArrayList<>();
+        for (File file : files)
+            names.add(file.getName());
+        assertEquals("crash-f" + (crashes - 1) + ".txt", names.get(0));
+        assertFalse(names.contains("crash-f0.txt"));
+        assertFalse(names.contains("crash-f1.txt"));
+        assertTrue(names.contains("crash-f2.txt"));
+    }
+
+    @Test
+    public void leftoverTempFileIsNeverListed() throws IOException {
+        File dir = mFolder.getRoot();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "crash-dead.txt.tmp"))) {
+            out.write("half a log".getBytes(StandardCharsets.UTF_8));
+        }
+        new CrashStore(dir).write("abc", "log");
+        File[] files = CrashStore.list(dir);
+        assertEquals(1, files.length);
+        assertEquals("crash-abc.txt", files[0].getName());
+        assertFalse(new File(dir, "crash-abc.txt.tmp").exists());
+    }
+
+    @Test
+    public void legacyLogIsMovedIntoTheDirectory() throws IOException {
+        File dir = new File(mFolder.getRoot(), "crashes");
+        File legacy = new File(mFolder.getRoot(), CrashStore.LEGACY_NAME);
+        try (FileOutputStream out = new FileOutputStream(legacy)) {
+            out.write("old log".getBytes(StandardCharsets.UTF_8));
+        }
+        CrashStore.migrateLegacy(dir);
+        assertFalse(legacy.exists());
+        File[] files = CrashStore.list(dir);
+        assertEquals(1, files.length);
+        assertEquals("crash-legacy.txt", files[0].getName());
+        assertEquals(1, CrashStore.readCount(files[0]));
+        // nothing left to move
+        CrashStore.migrateLegacy(dir);
+        assertEquals(1, CrashStore.list(dir).length);
+    }
+
+    @Test
+    public void findOnlyResolvesFilesOfTheDirectory() throws IOException {
+        File dir = new File(mFolder.getRoot(), "crashes");
+        File file = new CrashStore(dir).write("abc", "log");
+        File outside = mFolder.newFile("crash-outside.txt");
+        assertEquals(file.getCanonicalFile(), CrashStore.find(dir, "crash-abc.txt"));
+        assertNull(CrashStore.find(dir, "../crash-outside.txt"));
+        assertNull(CrashStore.find(dir, outside.getAbsolutePath()));
+        assertNull(CrashStore.find(dir, "crash-missing.txt"));
+        assertNull(CrashStore.find(dir, null));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DwellMetricsTest {
+    @Before
+    public void setUp() {
+        DwellMetrics.reset();
+    }
+
+    @Test
+    public void bucketsStayWithinAnEighth() {
+        for (long value = 1; value < 100000000; value = value * 3 + 1) {
+            long estimate = DwellMetrics.bucketValue(DwellMetrics.bucket(value));
+            assertTrue(value + " -> " + estimate, Math.abs(estimate - value) <= value / 8 + 1);
+        }
+    }
+
+    @Test
+    public void recordsPackageAndActivityDwell() {
+        DwellMetrics.onForeground("com.a", "com.a.Main", 0);
+        DwellMetrics.onForeground("com.a", "com.a.Detail", 1000);
+        DwellMetrics.onForeground("com.b", "com.b.Main", 3000);
+        String report = DwellMetrics.report();
+        assertTrue(report, report.contains("com.a: n=1"));
+        assertTrue(report, report.contains("com.a/com.a.Main: n=1"));
+        assertTrue(report, report.contains("com.a/com.a.Detail: n=1"));
+        assertTrue(report, report.contains("transition interval: n=2"));
+        assertFalse(report, report.contains("com.b"));
+
+        String description = DwellMetrics.describePackage("com.a");
+        assertTrue(description, description.contains(".Main: n=1"));
+        assertTrue(description, description.contains(".Detail: n=1"));
+    }
+
+    @Test
+    public void stopDropsTheOpenVisit() {
+        DwellMetrics.onForeground("com.a", "com.a.Main", 0);
+        DwellMetrics.onStopped();
+        assertNull(DwellMetrics.getCurrentPackage());
+        // the screen was off for an hour, the visit before it is not counted
+        DwellMetrics.onForeground("com.a", "com.a.Main", 3600000);
+        DwellMetrics.onForeground("com.b", "com.b.Main", 3601000);
+        // 1000 ms falls into the bucket reported as 992 ms
+        String report = DwellMetrics.report();
+        assertTrue(report, report.contains("com.a: n=1 p50=992ms"));
+        assertTrue(report, report.contains("transition interval: n=1 p50=992ms"));
+    }
+
+    @Test
+    public void repeatsAreIgnored() {
+        DwellMetrics.onForeground("com.a", "com.a.Main", 0);
+        DwellMetrics.onForeground("com.a", "com.a.Main", 500);
+        DwellMetrics.onForeground("com.b", null, 1000);
+        assertTrue(DwellMetrics.report().contains("com.a/com.a.Main: n=1 p50=992ms"));
+        assertEquals("com.b", DwellMetrics.getCurrentPackage());
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays recorded usage event streams through the incremental cursor and
+ * through the 60 s rescan MonitoringService used before, and checks that
+ * both see the same foreground after every tick.
+ */
+public class ForegroundTrackerTest {
+    private static final int FG = ForegroundTracker.MOVE_TO_FOREGROUND;
+    private static final int BG = ForegroundTracker.MOVE_TO_BACKGROUND;
+    private static final long TICK = 500;
+
+    // launcher -> mail -> compose -> back -> browser, with the usual
+    // background/foreground pairs sharing a timestamp
+    private static final String[] OPEN_AND_SWITCH = {
+            "1000 1 com.launcher/.Home",
+            "4200 2 com.launcher/.Home",
+            "4200 1 com.mail/.Inbox",
+            "9000 2 com.mail/.Inbox",
+            "9000 1 com.mail/.Compose",
+            "15000 2 com.mail/.Compose",
+            "15001 1 com.mail/.Inbox",
+            "21000 2 com.mail/.Inbox",
+            "21000 1 com.launcher/.Home",
+            "23000 2 com.launcher/.Home",
+            "23000 1 com.browser/.Main",
+    };
+
+    // a long stay with no events, longer than the old 60 s window
+    private static final String[] LONG_STAY = {
+            "2000 1 com.launcher/.Home",
+            "3000 2 com.launcher/.Home",
+            "3000 1 com.video/.Player",
+            "190000 2 com.video/.Player",
+            "190000 1 com.launcher/.Home",
+            "191000 2 com.launcher/.Home",
+            "191000 1 com.video/.Player",
+    };
+
+    // the app goes to the background without another one coming up
+    private static final String[] BACKGROUND_ONLY = {
+            "500 1 com.chat/.Main",
+            "7000 2 com.chat/.Main",
+            "7000 2 com.other/.Stale",
+            "12000 1 com.chat/.Main",
+    };
+
+    @Test
+    public void replaysRecordedStreamsLikeTheRescan() {
+        assertSameForeground(parse(OPEN_AND_SWITCH), 40000);
+        assertSameForeground(parse(LONG_STAY), 260000);
+        assertSameForeground(parse(BACKGROUND_ONLY), 20000);
+    }
+
+    @Test
+    public void replaysRandomStreamsLikeTheRescan() {
+        String[] packages = {"com.a", "com.b", "com.c", "com.d"};
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            List<Event> events = new ArrayList<>();
+            long time = 1000;
+            String current = null;
+            for (int i = 0; i < 400; i++) {
+                // a third of the transitions land on the timestamp of the previous event
+                time += random.nextInt(3) == 0 ? 0 : random.nextInt(4000);
+                String pkg = packages[random.nextInt(packages.length)];
+                String cls = pkg + ".Activity" + random.nextInt(3);
+                if (current != null && random.nextInt(5) > 0)
+                    events.add(new Event(time, BG, current, current + ".Activity0"));
+                events.add(new Event(time, FG, pkg, cls));
+                current = pkg;
+            }
+            assertSameForeground(events, time + 5000);
+        }
+    }
+
+    @Test
+    public void isConsumedSkipsEverythingBeforeTheCursor() {
+        ForegroundTracker tracker = new ForegroundTracker();
+        assertFalse(tracker.isConsumed(0, 0));
+
+        tracker.onEvent(FG, "com.a", "com.a.Main", 100);
+        tracker.onEvent(FG, "com.b", "com.b.Main", 100);
+        assertEquals(100, tracker.getCursor());
+        assertTrue(tracker.isConsumed(99, 0));
+        assertTrue(tracker.isConsumed(100, 0));
+        assertTrue(tracker.isConsumed(100, 1));
+        assertFalse(tracker.isConsumed(100, 2));
+        assertFalse(tracker.isConsumed(101, 0));
+    }
+
+    @Test
+    public void onEventRestartsTheCountOnANewTimestamp() {
+        ForegroundTracker tracker = new ForegroundTracker();
+        tracker.onEvent(FG, "com.a", "com.a.Main", 100);
+        tracker.onEvent(BG, "com.a", "com.a.Main", 200);
+        assertEquals(200, tracker.getCursor());
+        assertTrue(tracker.isConsumed(200, 0));
+        assertFalse(tracker.isConsumed(200, 1));
+        assertNull(tracker.getPackageName());
+    }
+
+    @Test
+    public void eventSharingTheCursorTimestampIsAppliedOnce() {
+        FakeEventSource source = new FakeEventSource();
+        ForegroundTracker tracker = new ForegroundTracker();
+
+        // the system has only written the first of two events at 1000 so far
+        source.add(new Event(1000, BG, "com.a", "com.a.Main"));
+        poll(tracker, source, 1500);
+        assertEquals(1000, tracker.getCursor());
+
+        source.add(new Event(1000, FG, "com.b", "com.b.Main"));
+        poll(tracker, source, 2000);
+        assertEquals("com.b", tracker.getPackageName());
+        assertTrue(tracker.consumeChanged());
+
+        // the next query starts at 1000 again and sees both, neither is applied twice
+        poll(tracker, source, 2500);
+        assertFalse(tracker.consumeChanged());
+        assertTrue(tracker.isConsumed(1000, 1));
+    }
+
+    @Test
+    public void repeatedForegroundOfTheSameActivityIsNoChange() {
+        ForegroundTracker tracker = new ForegroundTracker();
+        tracker.onEvent(FG, "com.a", "com.a.Main", 100);
+        assertTrue(tracker.consumeChanged());
+        tracker.onEvent(FG, "com.a", "com.a.Main", 300);
+        assertFalse(tracker.consumeChanged());
+        tracker.onEvent(BG, "com.b", "com.b.Main", 400);
+        assertFalse(tracker.consumeChanged());
+        assertEquals("com.a", tracker.getPackageName());
+    }
+
+    private static void assertSameForeground(List<Event> events, long end) {
+        FakeEventSource source = new FakeEventSource();
+        for (Event event : events)
+            source.add(event);
+        ForegroundTracker tracker = new ForegroundTracker();
+        LegacyRescan legacy = new LegacyRescan();
+        for (long now = TICK; now <= end; now += TICK) {
+            poll(tracker, source, now);
+            legacy.tick(source, now);
+            assertEquals("package at " + now, legacy.text, tracker.getPackageName());
+            assertEquals("class at " + now, legacy.text1, tracker.getClassName());
+        }
+    }
+
+    /**
+     * What MonitoringService.getActivityInfo() does with a real query.
+     */
+    private static void poll(ForegroundTracker tracker, FakeEventSource source, long now) {
+        long cursor = tracker.getCursor();
+        long begin = cursor < 0 ? now - 600000 : cursor;
+        tracker.beginQuery();
+        for (Event event : source.query(begin, now))
+            tracker.offer(event.type, event.pkg, event.cls, event.timestamp);
+    }
+
+    /**
+     * The previous MonitoringService logic: every tick re-reads the last
+     * minute, or ten minutes until something was found.
+     */
+    private static class LegacyRescan {
+        String text, text1;
+        boolean firstRun = true;
+
+        void tick(FakeEventSource source, long now) {
+            for (Event event : source.query(now - (firstRun ? 600000 : 60000), now)) {
+                if (event.type == FG) {
+                    text = event.pkg;
+                    text1 = event.cls;
+                } else if (event.type == BG && event.pkg.equals(text)) {
+                    text = null;
+                    text1 = null;
+                }
+            }
+            if (text != null)
+                firstRun = false;
+        }
+    }
+
+    /**
+     * Stands in for UsageStatsManager.queryEvents: events in [begin, end).
+     */
+    private static class FakeEventSource {
+        private final List<Event> mEvents = new ArrayList<>();
+
+        void add(Event event) {
+            mEvents.add(event);
+        }
+
+        List<Event> query(long begin, long end) {
+            List<Event> result = new ArrayList<>();
+            for (Event event : mEvents) {
+                if (event.timestamp >= begin && event.timestamp < end)
+                    result.add(event);
+            }
+            return result;
+        }
+    }
+
+    private static class Event {
+        final long timestamp;
+        final int type;
+        final String pkg;
+        final String cls;
+
+        Event(long timestamp, int type, String pkg, String cls) {
+            this.timestamp = timestamp;
+            this.type = type;
+            this.pkg = pkg;
+            this.cls = cls;
+        }
+    }
+
+    private static List<Event> parse(String[] lines) {
+        List<Event> events = new ArrayList<>();
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            String[] component = parts[2].split("/");
+            String cls = component[1].startsWith(".") ? component[0] + component[1] : component[1];
+            events.add(new Event(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), component[0], cls));
+        }
+        return events;
+    }
+}
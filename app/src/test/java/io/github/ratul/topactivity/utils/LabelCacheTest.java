@@ -0,0 +1,152 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LabelCacheTest {
+    /**
+     * Installed packages as the package manager would report them.
+     */
+    private static class FakeSource implements LabelCache.Source {
+        final Map<String, LabelCache.Entry> installed = new HashMap<>();
+        int loads;
+        int checks;
+
+        void install(String pkg, String label, long lastUpdateTime) {
+            installed.put(pkg, new LabelCache.Entry(label, lastUpdateTime));
+        }
+
+        @Override
+        public LabelCache.Entry load(String pkg) {
+            loads++;
+            LabelCache.Entry entry = installed.get(pkg);
+            return entry == null ? null : new LabelCache.Entry(entry.label, entry.lastUpdateTime);
+        }
+
+        @Override
+        public long getLastUpdateTime(String pkg) {
+            checks++;
+            LabelCache.Entry entry = installed.get(pkg);
+            return entry == null ? -1 : entry.lastUpdateTime;
+        }
+    }
+
+    private final FakeSource mSource = new FakeSource();
+    private int mChanges;
+    private final LabelCache mCache = new LabelCache(3, mSource, () -> mChanges++);
+
+    @Test
+    public void loadsOnceThenHits() {
+        mSource.install("com.a", "A", 1);
+        assertEquals("A", mCache.get("com.a"));
+        assertEquals("A", mCache.get("com.a"));
+        assertEquals(1, mSource.loads);
+        assertEquals(0, mSource.checks);
+        assertEquals(1, mCache.getHits());
+        assertEquals(1, mCache.getMisses());
+        assertEquals(1, mChanges);
+    }
+
+    @Test
+    public void unknownPackageIsNotCached() {
+        assertNull(mCache.get("com.missing"));
+        assertEquals(0, mCache.size());
+        assertEquals(0, mChanges);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        mSource.install("com.a", "A", 1);
+        mSource.install("com.b", "B", 1);
+        mSource.install("com.c", "C", 1);
+        mSource.install("com.d", "D", 1);
+        mCache.get("com.a");
+        mCache.get("com.b");
+        mCache.get("com.c");
+        mCache.get("com.a");
+        mCache.get("com.d");
+        assertEquals(3, mCache.size());
+        mSource.loads = 0;
+        mCache.get("com.a");
+        assertEquals(0, mSource.loads);
+        mCache.get("com.b");
+        assertEquals(1, mSource.loads);
+    }
+
+    @Test
+    public void restoredEntryIsCheckedOnceAndKeptWhenCurrent() throws IOException {
+        mSource.install("com.a", "A", 5);
+        LabelCache restored = roundTrip();
+        mSource.loads = 0;
+        assertEquals("A", restored.get("com.a"));
+        assertEquals("A", restored.get("com.a"));
+        assertEquals(0, mSource.loads);
+        assertEquals(1, mSource.checks);
+    }
+
+    @Test
+    public void restoredEntryOfAnUpdatedPackageIsReloaded() throws IOException {
+        mSource.install("com.a", "Old", 5);
+        LabelCache restored = roundTrip();
+        // updated while the process was dead
+        mSource.install("com.a", "New", 9);
+        assertEquals("New", restored.get("com.a"));
+    }
+
+    @Test
+    public void restoredEntryOfARemovedPackageIsDropped() throws IOException {
+        mSource.install("com.a", "A", 5);
+        LabelCache restored = roundTrip();
+        mSource.installed.clear();
+        assertNull(restored.get("com.a"));
+        assertEquals(0, restored.size());
+    }
+
+    @Test
+    public void removeAndClearReportChanges() {
+        mSource.install("com.a", "A", 1);
+        mCache.get("com.a");
+        mCache.remove("com.b");
+        assertEquals(1, mChanges);
+        mCache.remove("com.a");
+        assertEquals(2, mChanges);
+        mCache.clear();
+        assertEquals(3, mChanges);
+    }
+
+    private LabelCache roundTrip() throws IOException {
+        mCache.get("com.a");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mCache.write(new DataOutputStream(bytes));
+        LabelCache restored = new LabelCache(3, mSource, null);
+        restored.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        mSource.checks = 0;
+        return restored;
+    }
+}
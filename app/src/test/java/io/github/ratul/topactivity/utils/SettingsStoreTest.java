@@ -0,0 +1,169 @@
+/*
+ *   Copyright (C) 2022 Ratul Hasan
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.ratul.topactivity.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SettingsStoreTest {
+    private static final int TOGGLES = 5000;
+
+    /**
+     * SharedPreferences as seen after each commit; commits are run by the test.
+     */
+    private static class FakeBackend implements SettingsStore.Backend {
+        final Map<String, Object> persisted = new HashMap<>();
+        final AtomicInteger scheduled = new AtomicInteger();
+        final List<Map<String, Object>> writes = new ArrayList<>();
+
+        @Override
+        public void scheduleCommit(SettingsStore store, long delay) {
+            scheduled.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void write(Map<String, Object> values) {
+            writes.add(values);
+            persisted.putAll(values);
+        }
+    }
+
+    private final FakeBackend mBackend = new FakeBackend();
+    private final SettingsStore mStore = new SettingsStore(new HashMap<String, Object>(), mBackend, 200);
+
+    @Test
+    public void missingAndMistypedValuesTakeDefaults() {
+        Map<String, Object> values = new HashMap<>();
+        values.put(SettingsStore.KEY_WIDTH, 1080);
+        values.put(SettingsStore.KEY_HAS_ACCESS, "yes");
+        SettingsStore.Snapshot snapshot = new SettingsStore(values, mBackend, 200).snapshot();
+        assertEquals(1080, snapshot.width);
+        assertTrue(snapshot.hasAccess);
+        assertTrue(snapshot.notiToggleEnabled);
+        assertFalse(snapshot.showWindow);
+    }
+
+    @Test
+    public void withCopiesAndReplacesOneValue() {
+        SettingsStore.Snapshot before = mStore.snapshot();
+        SettingsStore.Snapshot after = before.with(SettingsStore.KEY_WINDOW_Y, 42);
+        assertEquals(0, before.windowY);
+        assertEquals(42, after.windowY);
+        assertEquals(before.width, after.width);
+        assertEquals(before.hasAccess, after.hasAccess);
+    }
+
+    @Test
+    public void unchangedValueIsNotWrittenOrNotified() {
+        final List<String> changed = new ArrayList<>();
+        mStore.addListener(changed::add);
+        mStore.set(SettingsStore.KEY_WIDTH, 720);
+        assertEquals(0, changed.size());
+        assertEquals(0, mBackend.scheduled.get());
+    }
+
+    @Test
+    public void writesAreBatchedIntoOneCommit() {
+        mStore.set(SettingsStore.KEY_WIDTH, 1080);
+        mStore.set(SettingsStore.KEY_SHOW_WINDOW, true);
+        mStore.set(SettingsStore.KEY_WINDOW_X, 10, SettingsStore.KEY_WINDOW_Y, 20);
+        assertEquals(1, mBackend.scheduled.get());
+        mStore.commit();
+        assertEquals(1, mBackend.writes.size());
+        assertEquals(4, mBackend.writes.get(0).size());
+        // nothing left for the scheduled commit
+        mStore.commit();
+        assertEquals(1, mBackend.writes.size());
+    }
+
+    @Test
+    public void concurrentTogglesFromTileNotificationAndActivityAreNotLost() throws InterruptedException {
+        final AtomicInteger notified = new AtomicInteger();
+        mStore.addListener(key -> notified.incrementAndGet());
+        String[] callers = {"tile", "notification", "activity"};
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger shown = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (String caller : callers) {
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < TOGGLES; i++) {
+                    if (mStore.toggle(SettingsStore.KEY_SHOW_WINDOW))
+                        shown.incrementAndGet();
+                }
+            }, caller));
+        }
+        // the writer thread committing while the toggles run
+        Thread writer = new Thread(() -> {
+            await(start);
+            for (int i = 0; i < TOGGLES; i++)
+                mStore.commit();
+        }, "writer");
+        threads.add(writer);
+        for (Thread thread : threads)
+            thread.start();
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        mStore.commit();
+
+        int toggles = callers.length * TOGGLES;
+        assertEquals(toggles, notified.get());
+        // every toggle saw a distinct state, so exactly half of them turned it on
+        assertEquals(toggles / 2, shown.get());
+        assertEquals(toggles % 2 == 1, mStore.snapshot().showWindow);
+        assertEquals(mStore.snapshot().showWindow, mBackend.persisted.get(SettingsStore.KEY_SHOW_WINDOW));
+    }
+
+    @Test
+    public void readersSeeWholeSnapshots() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread mover = new Thread(() -> {
+            await(start);
+            for (int i = 1; i <= TOGGLES; i++)
+                mStore.set(SettingsStore.KEY_WINDOW_X, i, SettingsStore.KEY_WINDOW_Y, -i);
+        });
+        mover.start();
+        start.countDown();
+        boolean torn = false;
+        while (mover.isAlive()) {
+            SettingsStore.Snapshot snapshot = mStore.snapshot();
+            torn |= snapshot.windowX != -snapshot.windowY;
+        }
+        mover.join();
+        assertFalse(torn);
+        assertEquals(TOGGLES, mStore.snapshot().windowX);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}